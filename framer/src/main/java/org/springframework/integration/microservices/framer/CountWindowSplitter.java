@@ -0,0 +1,37 @@
+package org.springframework.integration.microservices.framer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.LongStream;
+
+import org.springframework.integration.annotation.Splitter;
+import org.springframework.integration.support.MessageBuilder;
+
+public class CountWindowSplitter {
+
+	private final AtomicLong messageSequence = new AtomicLong();
+
+	private final int windowSize;
+
+	private final int stride;
+
+	public CountWindowSplitter(int windowSize, int stride) {
+		this.windowSize = windowSize;
+		this.stride = stride;
+	}
+
+	@Splitter
+	public List<MessageBuilder<Object>> slidingWindows(Object payload) {
+		long messageIndex = this.messageSequence.getAndIncrement();
+		return LongStream.iterate(messageIndex - messageIndex % this.stride,
+						(windowStart) -> windowStart >= 0 && windowStart > messageIndex - this.windowSize,
+						(windowStart) -> windowStart - this.stride)
+				.mapToObj((windowStart) ->
+						MessageBuilder.withPayload(payload)
+								.setCorrelationId(windowStart)
+								.setSequenceNumber((int) (messageIndex - windowStart))
+								.setSequenceSize(this.windowSize))
+				.toList();
+	}
+
+}
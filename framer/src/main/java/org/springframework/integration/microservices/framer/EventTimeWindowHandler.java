@@ -0,0 +1,290 @@
+package org.springframework.integration.microservices.framer;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.handler.AbstractMessageProducingHandler;
+import org.springframework.integration.support.management.ManageableLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.Assert;
+
+public class EventTimeWindowHandler extends AbstractMessageProducingHandler
+		implements ManageableLifecycle, DisposableBean {
+
+	public static final String WINDOW_START = "windowStart";
+
+	public static final String WINDOW_END = "windowEnd";
+
+	private final NavigableMap<Long, Window> openWindows = new TreeMap<>();
+
+	private final long size;
+
+	private final long slide;
+
+	private final long sessionGap;
+
+	private long allowedLateness;
+
+	private String eventTimeHeader = MessageHeaders.TIMESTAMP;
+
+	private Duration idleTimeout;
+
+	private Supplier<WindowAggregator> windowAggregatorSupplier;
+
+	private MessageChannel discardChannel;
+
+	private TimerWheel<Window> timerWheel = new TimerWheel<>(100, 512);
+
+	private long maxEventTime = Long.MIN_VALUE;
+
+	private long watermark = Long.MIN_VALUE;
+
+	private long lastEventAt;
+
+	private volatile ScheduledFuture<?> idleWatermark;
+
+	private EventTimeWindowHandler(long size, long slide, long sessionGap) {
+		this.size = size;
+		this.slide = slide;
+		this.sessionGap = sessionGap;
+	}
+
+	public static EventTimeWindowHandler tumbling(Duration size) {
+		return sliding(size, size);
+	}
+
+	public static EventTimeWindowHandler sliding(Duration size, Duration slide) {
+		Assert.isTrue(size.toMillis() > 0, "'size' must be at least 1 millisecond");
+		Assert.isTrue(slide.toMillis() > 0, "'slide' must be at least 1 millisecond");
+		return new EventTimeWindowHandler(size.toMillis(), slide.toMillis(), 0);
+	}
+
+	public static EventTimeWindowHandler session(Duration gap) {
+		Assert.isTrue(gap.toMillis() > 0, "'gap' must be at least 1 millisecond");
+		return new EventTimeWindowHandler(0, 0, gap.toMillis());
+	}
+
+	public void setAllowedLateness(Duration allowedLateness) {
+		this.allowedLateness = allowedLateness.toMillis();
+	}
+
+	public void setEventTimeHeader(String eventTimeHeader) {
+		this.eventTimeHeader = eventTimeHeader;
+	}
+
+	public void setIdleTimeout(Duration idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	public void setWindowAggregatorSupplier(Supplier<WindowAggregator> windowAggregatorSupplier) {
+		this.windowAggregatorSupplier = windowAggregatorSupplier;
+	}
+
+	public void setDiscardChannel(MessageChannel discardChannel) {
+		this.discardChannel = discardChannel;
+	}
+
+	public void setTimerWheel(long tickMillis, int wheelSize) {
+		this.timerWheel = new TimerWheel<>(tickMillis, wheelSize);
+	}
+
+	@Override
+	protected void onInit() {
+		super.onInit();
+		start();
+	}
+
+	@Override
+	public synchronized void start() {
+		if (this.idleTimeout != null && this.idleWatermark == null) {
+			this.idleWatermark = getTaskScheduler().scheduleWithFixedDelay(this::advanceOnIdle, this.idleTimeout);
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		if (this.idleWatermark != null) {
+			this.idleWatermark.cancel(false);
+			this.idleWatermark = null;
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.idleTimeout == null || this.idleWatermark != null;
+	}
+
+	@Override
+	public void destroy() {
+		stop();
+	}
+
+	@Override
+	protected synchronized void handleMessageInternal(Message<?> message) {
+		long eventTime = eventTime(message);
+		this.lastEventAt = System.currentTimeMillis();
+		boolean assigned =
+				this.sessionGap > 0
+						? assignToSession(eventTime, message.getPayload())
+						: assignToTimeWindows(eventTime, message.getPayload());
+
+		if (!assigned && this.discardChannel != null) {
+			this.discardChannel.send(message);
+		}
+		if (eventTime > this.maxEventTime) {
+			this.maxEventTime = eventTime;
+			advanceWatermark(eventTime - this.allowedLateness);
+		}
+	}
+
+	private long eventTime(Message<?> message) {
+		Object eventTime = message.getHeaders().get(this.eventTimeHeader);
+		if (eventTime instanceof Number number) {
+			return number.longValue();
+		}
+		if (eventTime instanceof Instant instant) {
+			return instant.toEpochMilli();
+		}
+		throw new MessageHandlingException(message,
+				"The '" + this.eventTimeHeader + "' header must be an epoch millis number or an Instant");
+	}
+
+	private boolean assignToTimeWindows(long eventTime, Object payload) {
+		boolean assigned = false;
+		for (long windowStart = eventTime - Math.floorMod(eventTime, this.slide);
+				windowStart > eventTime - this.size;
+				windowStart -= this.slide) {
+
+			long windowEnd = windowStart + this.size;
+			if (windowEnd <= this.watermark) {
+				// Late event: this window has been emitted already
+				continue;
+			}
+			Window window = this.openWindows.get(windowStart);
+			if (window == null) {
+				window = new Window(windowStart, windowEnd);
+				this.openWindows.put(windowStart, window);
+				this.timerWheel.schedule(windowEnd, window);
+			}
+			window.add(eventTime, payload);
+			assigned = true;
+		}
+		return assigned;
+	}
+
+	private boolean assignToSession(long eventTime, Object payload) {
+		Window session = new Window(eventTime, eventTime + this.sessionGap);
+		// Sessions do not overlap, so the ones to merge are adjacent to each other below the new end
+		Map.Entry<Long, Window> candidate = this.openWindows.lowerEntry(session.end);
+		if (session.end <= this.watermark && (candidate == null || candidate.getValue().end <= session.start)) {
+			// Late event which does not fall into any open session
+			return false;
+		}
+		session.add(eventTime, payload);
+		while (candidate != null && candidate.getValue().end > session.start) {
+			Window overlapping = this.openWindows.remove(candidate.getKey());
+			session.merge(overlapping);
+			candidate = this.openWindows.lowerEntry(candidate.getKey());
+		}
+		this.openWindows.put(session.start, session);
+		this.timerWheel.schedule(session.end, session);
+		return true;
+	}
+
+	private synchronized void advanceOnIdle() {
+		if (this.maxEventTime > Long.MIN_VALUE) {
+			// No events: assume event time goes on together with the wall clock
+			long idle = System.currentTimeMillis() - this.lastEventAt;
+			if (idle >= this.idleTimeout.toMillis()) {
+				advanceWatermark(this.maxEventTime + idle - this.allowedLateness);
+			}
+		}
+	}
+
+	private void advanceWatermark(long watermark) {
+		if (watermark > this.watermark) {
+			this.watermark = watermark;
+			this.timerWheel.advanceTo(watermark, this::emit);
+		}
+	}
+
+	private void emit(Window window) {
+		// Stale timers of merged or extended sessions are skipped
+		if (this.openWindows.get(window.start) != window || window.end > this.watermark) {
+			return;
+		}
+		this.openWindows.remove(window.start);
+		getOutputChannel().send(
+				getMessageBuilderFactory()
+						.withPayload(window.result())
+						.setCorrelationId(window.start)
+						.setHeader(WINDOW_START, window.start)
+						.setHeader(WINDOW_END, window.end)
+						.build());
+	}
+
+	private final class Window {
+
+		private final List<Event> events;
+
+		private final WindowAggregator aggregator;
+
+		private long start;
+
+		private long end;
+
+		Window(long start, long end) {
+			this.start = start;
+			this.end = end;
+			Supplier<WindowAggregator> aggregatorSupplier = EventTimeWindowHandler.this.windowAggregatorSupplier;
+			this.aggregator = aggregatorSupplier != null ? aggregatorSupplier.get() : null;
+			this.events = this.aggregator == null ? new ArrayList<>() : null;
+		}
+
+		void add(long eventTime, Object payload) {
+			if (this.aggregator != null) {
+				this.aggregator.add((Number) payload);
+			}
+			else {
+				this.events.add(new Event(eventTime, payload));
+			}
+		}
+
+		void merge(Window other) {
+			this.start = Math.min(this.start, other.start);
+			this.end = Math.max(this.end, other.end);
+			if (this.aggregator != null) {
+				this.aggregator.merge(other.aggregator);
+			}
+			else {
+				this.events.addAll(other.events);
+			}
+		}
+
+		Object result() {
+			if (this.aggregator != null) {
+				return this.aggregator.result();
+			}
+			this.events.sort(Comparator.comparingLong(Event::time));
+			return this.events.stream().map(Event::payload).toList();
+		}
+
+	}
+
+	private record Event(long time, Object payload) {
+
+	}
+
+}
@@ -1,19 +1,41 @@
 package org.springframework.integration.microservices.framer;
 
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.IntStream;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
-import org.springframework.integration.annotation.Splitter;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlowAdapter;
 import org.springframework.integration.dsl.IntegrationFlowDefinition;
 import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.integration.store.SimpleMessageStore;
-import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandlingException;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
 @SpringBootApplication
 public class FramerApplication {
@@ -23,48 +45,249 @@ public class FramerApplication {
 	}
 
 	@Bean
-	MessageGroupStore messageGroupStore() {
+	MessageGroupStore messageGroupStore(@Value("${framer.store.file:}") String storeFile,
+			@Value("${framer.store.capacity:67108864}") int storeCapacity,
+			@Value("${framer.store.sync:false}") boolean syncWrites) {
+
+		if (StringUtils.hasText(storeFile)) {
+			MappedFileMessageStore messageStore = new MappedFileMessageStore(Path.of(storeFile), storeCapacity);
+			messageStore.setSyncWrites(syncWrites);
+			return messageStore;
+		}
 		return new SimpleMessageStore();
 	}
 
+	@Bean("framer.output")
+	PollableChannel framerOutput(@Value("${framer.output.capacity:0}") int capacity,
+			@Value("${framer.output.overflow:block}") String overflow) {
+
+		if (capacity > 0) {
+			return new RingBufferChannel(capacity,
+					RingBufferChannel.OverflowPolicy.valueOf(overflow.toUpperCase().replace('-', '_')));
+		}
+		return new QueueChannel();
+	}
+
 	@Bean
-	Framer framer(MessageGroupStore messageGroupStore) {
-		return new Framer(messageGroupStore);
+	MeterBinder framerOutputMetrics(@Qualifier("framer.output") PollableChannel framerOutput) {
+		return (registry) -> {
+			if (framerOutput instanceof RingBufferChannel ringBufferChannel) {
+				Gauge.builder("framer.output.depth", ringBufferChannel, RingBufferChannel::getQueueSize)
+						.description("The number of windows waiting in the framer output")
+						.register(registry);
+				FunctionCounter.builder("framer.output.dropped", ringBufferChannel, RingBufferChannel::getDroppedCount)
+						.description("The number of windows dropped or rejected on the framer output overflow")
+						.register(registry);
+			}
+			else if (framerOutput instanceof QueueChannel queueChannel) {
+				Gauge.builder("framer.output.depth", queueChannel, QueueChannel::getQueueSize)
+						.description("The number of windows waiting in the framer output")
+						.register(registry);
+			}
+		};
+	}
+
+	@Bean
+	Framer framer(MessageGroupStore messageGroupStore,
+			@Value("${framer.window.size:3}") int windowSize,
+			@Value("${framer.window.stride:1}") int stride,
+			@Value("${framer.window.ring-buffer:false}") boolean ringBuffer,
+			@Value("${framer.window.function:}") String windowFunction,
+			@Value("${framer.window.type:count}") String windowType,
+			@Value("${framer.window.duration:1000}") long windowDuration,
+			@Value("${framer.window.slide:0}") long windowSlide,
+			@Value("${framer.window.allowed-lateness:0}") long allowedLateness,
+			@Value("${framer.window.event-time-header:timestamp}") String eventTimeHeader,
+			@Value("${framer.window.idle-timeout:0}") long idleTimeout,
+			@Value("${framer.partition.count:1}") int partitions,
+			@Value("${framer.partition.key-expression:headers['partitionKey']}") String partitionKeyExpression,
+			@Value("${framer.store.file:}") String storeFile,
+			@Value("${framer.store.capacity:67108864}") int storeCapacity,
+			@Value("${framer.store.sync:false}") boolean syncWrites) {
+
+		Framer framer = new Framer(messageGroupStore);
+		framer.setWindowSize(windowSize);
+		framer.setStride(stride);
+		framer.setRingBuffer(ringBuffer);
+		Supplier<WindowAggregator> windowAggregatorSupplier =
+				StringUtils.hasText(windowFunction) ? WindowAggregators.forFunction(windowFunction) : null;
+		framer.setWindowAggregatorSupplier(windowAggregatorSupplier);
+		if (!"count".equals(windowType)) {
+			framer.setEventTimeWindows(() -> {
+				Duration duration = Duration.ofMillis(windowDuration);
+				EventTimeWindowHandler windowHandler =
+						switch (windowType) {
+							case "tumbling" -> EventTimeWindowHandler.tumbling(duration);
+							case "sliding" -> EventTimeWindowHandler.sliding(duration,
+									windowSlide > 0 ? Duration.ofMillis(windowSlide) : duration);
+							case "session" -> EventTimeWindowHandler.session(duration);
+							default -> throw new IllegalArgumentException("Unknown window type: " + windowType);
+						};
+				windowHandler.setAllowedLateness(Duration.ofMillis(allowedLateness));
+				windowHandler.setEventTimeHeader(eventTimeHeader);
+				if (idleTimeout > 0) {
+					windowHandler.setIdleTimeout(Duration.ofMillis(idleTimeout));
+				}
+				windowHandler.setWindowAggregatorSupplier(windowAggregatorSupplier);
+				return windowHandler;
+			});
+		}
+		framer.setPartitions(partitions);
+		framer.setPartitionKeyExpression(new SpelExpressionParser().parseExpression(partitionKeyExpression));
+		if (StringUtils.hasText(storeFile)) {
+			framer.setShardStoreFactory((shard) -> {
+				MappedFileMessageStore shardStore = new MappedFileMessageStore(Path.of(storeFile + "-" + shard), storeCapacity);
+				shardStore.setSyncWrites(syncWrites);
+				return shardStore;
+			});
+		}
+		return framer;
 	}
 
-	public static class Framer extends IntegrationFlowAdapter {
+	public static class Framer extends IntegrationFlowAdapter implements DisposableBean {
 
 		private final MessageGroupStore messageGroupStore;
 
+		private int windowSize = 3;
+
+		private int stride = 1;
+
+		private boolean ringBuffer;
+
+		private Supplier<WindowAggregator> windowAggregatorSupplier;
+
+		private Supplier<EventTimeWindowHandler> eventTimeWindows;
+
+		private int partitions = 1;
+
+		private Expression partitionKeyExpression = new SpelExpressionParser().parseExpression("headers['partitionKey']");
+
+		private IntFunction<MessageGroupStore> shardStoreFactory = (shard) -> new SimpleMessageStore();
+
+		private final EvaluationContext evaluationContext = new StandardEvaluationContext();
+
+		private final List<ExecutorService> shardExecutors = new CopyOnWriteArrayList<>();
+
+		private final List<MessageGroupStore> shardStores = new CopyOnWriteArrayList<>();
+
 		public Framer(MessageGroupStore messageGroupStore) {
 			this.messageGroupStore = messageGroupStore;
 		}
 
+		public void setWindowSize(int windowSize) {
+			Assert.isTrue(windowSize > 0, "'windowSize' must be greater than 0");
+			this.windowSize = windowSize;
+		}
+
+		public void setStride(int stride) {
+			Assert.isTrue(stride > 0, "'stride' must be greater than 0");
+			this.stride = stride;
+		}
+
+		public void setRingBuffer(boolean ringBuffer) {
+			this.ringBuffer = ringBuffer;
+		}
+
+		public void setWindowAggregatorSupplier(Supplier<WindowAggregator> windowAggregatorSupplier) {
+			this.windowAggregatorSupplier = windowAggregatorSupplier;
+		}
+
+		public void setEventTimeWindows(Supplier<EventTimeWindowHandler> eventTimeWindows) {
+			this.eventTimeWindows = eventTimeWindows;
+		}
+
+		public void setPartitions(int partitions) {
+			Assert.isTrue(partitions > 0, "'partitions' must be greater than 0");
+			this.partitions = partitions;
+		}
+
+		public void setPartitionKeyExpression(Expression partitionKeyExpression) {
+			this.partitionKeyExpression = partitionKeyExpression;
+		}
+
+		public void setShardStoreFactory(IntFunction<MessageGroupStore> shardStoreFactory) {
+			this.shardStoreFactory = shardStoreFactory;
+		}
+
 		@Override
 		protected IntegrationFlowDefinition<?> buildFlow() {
-			return from("framer.input")
-					.split(this, "slidingWindows", (splitter) -> splitter.applySequence(false))
-					.aggregate((aggregatorSpec) ->
-							aggregatorSpec.messageStore(this.messageGroupStore)
-									.expireGroupsUponCompletion(true))
-					.channel((channels) -> channels.queue("framer.output"));
-		}
-
-		private final AtomicLong messageSequence = new AtomicLong();
-
-		@Splitter
-		public List<MessageBuilder<Object>> slidingWindows(Object payload) {
-			Long correlationKey = this.messageSequence.getAndIncrement();
-			return IntStream.range(0, 3)
-					.boxed()
-					.map((sequenceNumber) -> Map.entry(correlationKey - sequenceNumber, sequenceNumber))
-					.filter((sequenceDetails) -> sequenceDetails.getKey() >= 0)
-					.map((sequenceDetails) ->
-							MessageBuilder.withPayload(payload)
-									.setCorrelationId(sequenceDetails.getKey())
-									.setSequenceNumber(sequenceDetails.getValue())
-									.setSequenceSize(3))
-					.toList();
+			if (this.partitions > 1) {
+				return from("framer.input")
+						.route(Message.class, this::partition, (router) -> {
+							for (int shard = 0; shard < this.partitions; shard++) {
+								router.subFlowMapping(shard, shardFlow(shard));
+							}
+						});
+			}
+			return windows(from("framer.input"), this.messageGroupStore)
+					.channel("framer.output");
+		}
+
+		int partition(Message<?> message) {
+			Object partitionKey = this.partitionKeyExpression.getValue(this.evaluationContext, message);
+			if (partitionKey == null) {
+				// Otherwise all the messages without a key would silently pile up on the first shard
+				throw new MessageHandlingException(message,
+						"No partition key for the message: " + this.partitionKeyExpression.getExpressionString());
+			}
+			return Math.floorMod(partitionKey.hashCode(), this.partitions);
+		}
+
+		private IntegrationFlow shardFlow(int shard) {
+			// A single thread per shard keeps the order within a key
+			CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("framer-shard-" + shard + "-");
+			threadFactory.setDaemon(true);
+			ExecutorService shardExecutor = Executors.newSingleThreadExecutor(threadFactory);
+			MessageGroupStore shardStore = this.shardStoreFactory.apply(shard);
+			this.shardExecutors.add(shardExecutor);
+			this.shardStores.add(shardStore);
+			return (flow) ->
+					windows(flow.channel((channels) -> channels.executor(shardExecutor)), shardStore)
+							.channel("framer.output");
+		}
+
+		private IntegrationFlowDefinition<?> windows(IntegrationFlowDefinition<?> flow, MessageGroupStore store) {
+			if (this.eventTimeWindows != null) {
+				return flow.handle(this.eventTimeWindows.get());
+			}
+			if (this.ringBuffer) {
+				RingBufferWindowHandler windowHandler = new RingBufferWindowHandler(this.windowSize, this.stride);
+				if (this.windowAggregatorSupplier != null) {
+					windowHandler.setWindowAggregator(this.windowAggregatorSupplier.get());
+				}
+				return flow.handle(windowHandler);
+			}
+			IntegrationFlowDefinition<?> windows =
+					flow.split(new CountWindowSplitter(this.windowSize, this.stride), "slidingWindows",
+									(splitter) -> splitter.applySequence(false))
+							.aggregate((aggregatorSpec) ->
+									aggregatorSpec.messageStore(store)
+											.expireGroupsUponCompletion(true));
+			if (this.windowAggregatorSupplier != null) {
+				windows = windows.transform(List.class, (window) ->
+						WindowAggregators.aggregate(this.windowAggregatorSupplier.get(), window));
+			}
+			return windows;
+		}
+
+		@Override
+		public void destroy() throws Exception {
+			for (ExecutorService shardExecutor : this.shardExecutors) {
+				shardExecutor.shutdown();
+			}
+			for (ExecutorService shardExecutor : this.shardExecutors) {
+				if (!shardExecutor.awaitTermination(10, TimeUnit.SECONDS)) {
+					shardExecutor.shutdownNow();
+				}
+			}
+			// The windows in flight are in the shard stores by now, so they can be closed
+			for (MessageGroupStore shardStore : this.shardStores) {
+				if (shardStore instanceof DisposableBean disposableStore) {
+					disposableStore.destroy();
+				}
+			}
+			this.shardExecutors.clear();
+			this.shardStores.clear();
 		}
 
 	}
@@ -0,0 +1,440 @@
+package org.springframework.integration.microservices.framer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.integration.store.AbstractKeyValueMessageStore;
+import org.springframework.integration.store.MessageGroupMetadata;
+import org.springframework.integration.store.SimpleMessageGroup;
+import org.springframework.integration.support.MutableMessage;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+
+public class MappedFileMessageStore extends AbstractKeyValueMessageStore implements DisposableBean {
+
+	private static final byte PUT = 1;
+
+	private static final byte REMOVE = 2;
+
+	// Message ids added to the group of the key: [last modified][id most bits][id least bits]...
+	private static final byte GROUP_APPEND = 3;
+
+	private static final int UUID_SIZE = 2 * Long.BYTES;
+
+	private static final int LENGTH_SIZE = Integer.BYTES;
+
+	private static final int CRC_SIZE = Integer.BYTES;
+
+	private static final int RECORD_HEADER_SIZE = CRC_SIZE + 1 + Integer.BYTES;
+
+	private final Path file;
+
+	private final int capacity;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final SerializingConverter serializer = new SerializingConverter();
+
+	private final DeserializingConverter deserializer;
+
+	private Map<String, Long> index = new HashMap<>();
+
+	// Group appends written after the last full record of the group
+	private Map<String, GroupAppends> groupAppends = new HashMap<>();
+
+	private FileChannel fileChannel;
+
+	private MappedByteBuffer buffer;
+
+	private int writePosition;
+
+	private boolean syncWrites;
+
+	public MappedFileMessageStore(Path file, int capacity) {
+		this(file, capacity, MappedFileMessageStore.class.getClassLoader());
+	}
+
+	public MappedFileMessageStore(Path file, int capacity, ClassLoader classLoader) {
+		this.file = file;
+		this.capacity = capacity;
+		this.deserializer = new DeserializingConverter(classLoader);
+		try {
+			map();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Cannot map message store file: " + file, ex);
+		}
+		recover();
+	}
+
+	public void setSyncWrites(boolean syncWrites) {
+		this.syncWrites = syncWrites;
+	}
+
+	private void map() throws IOException {
+		this.fileChannel =
+				FileChannel.open(this.file,
+						StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.buffer = this.fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+	}
+
+	private void recover() {
+		int position = 0;
+		while (position + LENGTH_SIZE <= this.capacity) {
+			int recordLength = this.buffer.getInt(position);
+			if (recordLength < RECORD_HEADER_SIZE || position + LENGTH_SIZE + recordLength > this.capacity) {
+				break;
+			}
+			int typePosition = position + LENGTH_SIZE + CRC_SIZE;
+			byte type = this.buffer.get(typePosition);
+			int keyLength = this.buffer.getInt(typePosition + 1);
+			if ((type != PUT && type != REMOVE && type != GROUP_APPEND)
+					|| keyLength < 0 || keyLength > recordLength - RECORD_HEADER_SIZE
+					|| this.buffer.getInt(position + LENGTH_SIZE) != crc(this.buffer, typePosition, recordLength - CRC_SIZE)) {
+
+				// A torn or corrupted record: it and everything after it were not completely written
+				break;
+			}
+			int keyPosition = position + LENGTH_SIZE + RECORD_HEADER_SIZE;
+			byte[] key = new byte[keyLength];
+			this.buffer.get(keyPosition, key);
+			String keyString = new String(key, StandardCharsets.UTF_8);
+			int valueLength = recordLength - RECORD_HEADER_SIZE - keyLength;
+			if (type == GROUP_APPEND) {
+				byte[] value = new byte[valueLength];
+				this.buffer.get(keyPosition + keyLength, value);
+				applyGroupAppend(keyString, value);
+			}
+			else if (type == PUT) {
+				this.index.put(keyString, entry(keyPosition + keyLength, valueLength));
+				this.groupAppends.remove(keyString);
+			}
+			else {
+				this.index.remove(keyString);
+				this.groupAppends.remove(keyString);
+			}
+			position += LENGTH_SIZE + recordLength;
+		}
+		this.writePosition = position;
+		if (position + LENGTH_SIZE <= this.capacity && this.buffer.getInt(position) != 0) {
+			// Zero the invalid tail, so its leftovers are not taken for records after the next appends
+			for (int i = position; i < this.capacity; i++) {
+				this.buffer.put(i, (byte) 0);
+			}
+			this.buffer.force();
+		}
+	}
+
+	@Override
+	protected Object doRetrieve(Object id) {
+		Lock readLock = this.lock.readLock();
+		readLock.lock();
+		try {
+			return read(id.toString());
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	protected void doStore(Object id, Object objectToStore) {
+		Lock writeLock = this.lock.writeLock();
+		writeLock.lock();
+		try {
+			write(id.toString(), objectToStore);
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	protected void doStoreIfAbsent(Object id, Object objectToStore) {
+		Lock writeLock = this.lock.writeLock();
+		writeLock.lock();
+		try {
+			if (!this.index.containsKey(id.toString())) {
+				write(id.toString(), objectToStore);
+			}
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	protected Object doRemove(Object id) {
+		Lock writeLock = this.lock.writeLock();
+		writeLock.lock();
+		try {
+			return remove(id.toString());
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	protected void doRemoveAll(Collection<Object> ids) {
+		Lock writeLock = this.lock.writeLock();
+		writeLock.lock();
+		try {
+			ids.forEach((id) -> remove(id.toString()));
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	@Override
+	protected Collection<?> doListKeys(String keyPattern) {
+		Lock readLock = this.lock.readLock();
+		readLock.lock();
+		try {
+			if (keyPattern.endsWith("*")) {
+				String prefix = keyPattern.substring(0, keyPattern.length() - 1);
+				return this.index.keySet()
+						.stream()
+						.filter((key) -> key.startsWith(prefix))
+						.toList();
+			}
+			return this.index.containsKey(keyPattern) ? List.of(keyPattern) : List.of();
+		}
+		finally {
+			readLock.unlock();
+		}
+	}
+
+	@Override
+	public void destroy() throws IOException {
+		Lock writeLock = this.lock.writeLock();
+		writeLock.lock();
+		try {
+			this.buffer.force();
+			this.fileChannel.close();
+		}
+		finally {
+			writeLock.unlock();
+		}
+	}
+
+	private Object read(String key) {
+		Long entry = this.index.get(key);
+		if (entry == null) {
+			return null;
+		}
+		byte[] value = new byte[length(entry)];
+		this.buffer.get(offset(entry), value);
+		Object stored = this.deserializer.convert(value);
+		GroupAppends appends = this.groupAppends.get(key);
+		if (appends != null && stored instanceof MessageGroupMetadata metadata) {
+			return withAppends(metadata, appends);
+		}
+		return stored;
+	}
+
+	private void write(String key, Object value) {
+		if (value instanceof MessageGroupMetadata metadata) {
+			// The key-value store saves the whole group on every add: only the new ids are appended to the file
+			byte[] groupAppend = groupAppend(read(key), metadata);
+			if (groupAppend != null) {
+				append(GROUP_APPEND, key, groupAppend);
+				return;
+			}
+		}
+		append(PUT, key, this.serializer.convert(value));
+	}
+
+	private Object remove(String key) {
+		Object value = read(key);
+		if (value != null) {
+			append(REMOVE, key, new byte[0]);
+		}
+		return value;
+	}
+
+	private void append(byte type, String key, byte[] value) {
+		byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+		int recordLength = RECORD_HEADER_SIZE + keyBytes.length + value.length;
+		if (this.writePosition + LENGTH_SIZE + recordLength > this.capacity) {
+			compact();
+			if (this.writePosition + LENGTH_SIZE + recordLength > this.capacity) {
+				throw new IllegalStateException("No space left in the message store file: " + this.file);
+			}
+		}
+		int position = this.writePosition;
+		int nextPosition = writeRecord(this.buffer, position, type, keyBytes, value);
+		if (this.syncWrites) {
+			this.buffer.force(position, Math.min(nextPosition + LENGTH_SIZE, this.capacity) - position);
+		}
+		this.writePosition = nextPosition;
+
+		if (type == GROUP_APPEND) {
+			applyGroupAppend(key, value);
+		}
+		else if (type == PUT) {
+			this.index.put(key, entry(nextPosition - value.length, value.length));
+			this.groupAppends.remove(key);
+		}
+		else {
+			this.index.remove(key);
+			this.groupAppends.remove(key);
+		}
+	}
+
+	private void applyGroupAppend(String key, byte[] value) {
+		ByteBuffer groupAppend = ByteBuffer.wrap(value);
+		GroupAppends appends = this.groupAppends.computeIfAbsent(key, (groupKey) -> new GroupAppends());
+		appends.lastModified = groupAppend.getLong();
+		while (groupAppend.remaining() >= UUID_SIZE) {
+			appends.messageIds.add(new UUID(groupAppend.getLong(), groupAppend.getLong()));
+		}
+	}
+
+	// Only when the new metadata is the stored one plus some ids, otherwise the full group is written
+	private static byte[] groupAppend(Object stored, MessageGroupMetadata metadata) {
+		if (!(stored instanceof MessageGroupMetadata current)
+				|| current.getTimestamp() != metadata.getTimestamp()
+				|| current.isComplete() != metadata.isComplete()
+				|| current.getLastReleasedMessageSequenceNumber() != metadata.getLastReleasedMessageSequenceNumber()
+				|| !Objects.equals(current.getCondition(), metadata.getCondition())
+				|| metadata.size() <= current.size()) {
+
+			return null;
+		}
+		List<UUID> messageIds = metadata.getMessageIds();
+		if (!messageIds.subList(0, current.size()).equals(current.getMessageIds())) {
+			return null;
+		}
+		List<UUID> added = messageIds.subList(current.size(), messageIds.size());
+		ByteBuffer groupAppend = ByteBuffer.allocate(Long.BYTES + added.size() * UUID_SIZE);
+		groupAppend.putLong(metadata.getLastModified());
+		for (UUID messageId : added) {
+			groupAppend.putLong(messageId.getMostSignificantBits()).putLong(messageId.getLeastSignificantBits());
+		}
+		return groupAppend.array();
+	}
+
+	// The MessageGroupMetadata cannot be given more ids directly: it is rebuilt from a group of id-only messages
+	private static MessageGroupMetadata withAppends(MessageGroupMetadata metadata, GroupAppends appends) {
+		List<Message<?>> messages = new ArrayList<>();
+		for (UUID messageId : metadata.getMessageIds()) {
+			messages.add(new MutableMessage<>(messageId, Map.of(MessageHeaders.ID, messageId)));
+		}
+		for (UUID messageId : appends.messageIds) {
+			messages.add(new MutableMessage<>(messageId, Map.of(MessageHeaders.ID, messageId)));
+		}
+		SimpleMessageGroup group =
+				new SimpleMessageGroup(messages, "", metadata.getTimestamp(), metadata.isComplete());
+		group.setLastReleasedMessageSequenceNumber(metadata.getLastReleasedMessageSequenceNumber());
+		MessageGroupMetadata withAppends = new MessageGroupMetadata(group);
+		withAppends.setCondition(metadata.getCondition());
+		withAppends.setLastModified(appends.lastModified);
+		return withAppends;
+	}
+
+	private void compact() {
+		Path compactedFile = this.file.resolveSibling(this.file.getFileName() + ".compact");
+		Map<String, Long> compactedIndex = new HashMap<>();
+		int position = 0;
+		try (FileChannel compactedChannel =
+					FileChannel.open(compactedFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+							StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+			MappedByteBuffer compactedBuffer = compactedChannel.map(FileChannel.MapMode.READ_WRITE, 0, this.capacity);
+			for (Map.Entry<String, Long> indexEntry : this.index.entrySet()) {
+				byte[] keyBytes = indexEntry.getKey().getBytes(StandardCharsets.UTF_8);
+				byte[] value;
+				if (this.groupAppends.containsKey(indexEntry.getKey())) {
+					// The group appends are folded into a full group record
+					value = this.serializer.convert(read(indexEntry.getKey()));
+				}
+				else {
+					value = new byte[length(indexEntry.getValue())];
+					this.buffer.get(offset(indexEntry.getValue()), value);
+				}
+				position = writeRecord(compactedBuffer, position, PUT, keyBytes, value);
+				compactedIndex.put(indexEntry.getKey(), entry(position - value.length, value.length));
+			}
+			compactedBuffer.force();
+			this.fileChannel.close();
+			Files.move(compactedFile, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			map();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Cannot compact message store file: " + this.file, ex);
+		}
+		this.index = compactedIndex;
+		this.groupAppends = new HashMap<>();
+		this.writePosition = position;
+	}
+
+	// [length][crc][type][key length][key][value], where the CRC covers everything after itself.
+	// The next length slot is zeroed before the record length is written, so the recovery stops right after it.
+	private static int writeRecord(MappedByteBuffer buffer, int position, byte type, byte[] key, byte[] value) {
+		int recordLength = RECORD_HEADER_SIZE + key.length + value.length;
+		int typePosition = position + LENGTH_SIZE + CRC_SIZE;
+		int keyPosition = position + LENGTH_SIZE + RECORD_HEADER_SIZE;
+		buffer.put(typePosition, type);
+		buffer.putInt(typePosition + 1, key.length);
+		buffer.put(keyPosition, key);
+		buffer.put(keyPosition + key.length, value);
+		buffer.putInt(position + LENGTH_SIZE, crc(buffer, typePosition, recordLength - CRC_SIZE));
+		int nextPosition = position + LENGTH_SIZE + recordLength;
+		if (nextPosition + LENGTH_SIZE <= buffer.capacity()) {
+			buffer.putInt(nextPosition, 0);
+		}
+		buffer.putInt(position, recordLength);
+		return nextPosition;
+	}
+
+	private static int crc(MappedByteBuffer buffer, int position, int length) {
+		CRC32C crc = new CRC32C();
+		crc.update(buffer.slice(position, length));
+		return (int) crc.getValue();
+	}
+
+	private static long entry(int offset, int length) {
+		return ((long) offset << 32) | (length & 0xFFFFFFFFL);
+	}
+
+	private static int offset(long entry) {
+		return (int) (entry >>> 32);
+	}
+
+	private static int length(long entry) {
+		return (int) entry;
+	}
+
+	private static final class GroupAppends {
+
+		private final List<UUID> messageIds = new ArrayList<>();
+
+		private long lastModified;
+
+	}
+
+}
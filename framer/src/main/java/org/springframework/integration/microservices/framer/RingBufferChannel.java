@@ -0,0 +1,190 @@
+package org.springframework.integration.microservices.framer;
+
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import org.springframework.integration.channel.AbstractPollableChannel;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+public class RingBufferChannel extends AbstractPollableChannel {
+
+	public enum OverflowPolicy {
+
+		BLOCK, DROP_OLDEST, FAIL
+
+	}
+
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final int capacity;
+
+	private final int mask;
+
+	private final AtomicReferenceArray<Message<?>> slots;
+
+	// A Vyukov bounded MPMC queue: a slot sequence tells whose turn it is for that slot
+	private final AtomicLongArray sequences;
+
+	private final AtomicLong head = new AtomicLong();
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final Set<Runnable> subscribers = new CopyOnWriteArraySet<>();
+
+	private final OverflowPolicy overflowPolicy;
+
+	public RingBufferChannel(int capacity, OverflowPolicy overflowPolicy) {
+		Assert.isTrue(Integer.bitCount(capacity) == 1, "'capacity' must be a power of 2");
+		this.capacity = capacity;
+		this.mask = capacity - 1;
+		this.overflowPolicy = overflowPolicy;
+		this.slots = new AtomicReferenceArray<>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			this.sequences.set(i, i);
+		}
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public int getQueueSize() {
+		return (int) Math.max(0, this.tail.get() - this.head.get());
+	}
+
+	public long getDroppedCount() {
+		return this.dropped.get();
+	}
+
+	@Override
+	protected boolean doSend(Message<?> message, long timeout) {
+		boolean sent =
+				switch (this.overflowPolicy) {
+					case FAIL -> offer(message);
+					case DROP_OLDEST -> {
+						while (!offer(message)) {
+							if (poll() != null) {
+								this.dropped.incrementAndGet();
+							}
+						}
+						yield true;
+					}
+					case BLOCK -> await(() -> offer(message), deadline(timeout));
+				};
+		if (sent) {
+			this.subscribers.forEach(Runnable::run);
+		}
+		else {
+			this.dropped.incrementAndGet();
+		}
+		return sent;
+	}
+
+	@Override
+	protected Message<?> doReceive(long timeout) {
+		Message<?> message = poll();
+		if (message != null || timeout == 0) {
+			return message;
+		}
+		Message<?>[] received = new Message<?>[1];
+		await(() -> (received[0] = poll()) != null, deadline(timeout));
+		return received[0];
+	}
+
+	public Flux<Message<?>> asPublisher() {
+		return Flux.create((sink) -> {
+			AtomicInteger wip = new AtomicInteger();
+			Runnable drain = () -> {
+				// Only one thread drains for a subscriber, and only as much as requested
+				if (wip.getAndIncrement() == 0) {
+					do {
+						while (sink.requestedFromDownstream() > 0) {
+							Message<?> message = poll();
+							if (message == null) {
+								break;
+							}
+							sink.next(message);
+						}
+					}
+					while (wip.decrementAndGet() != 0);
+				}
+			};
+			this.subscribers.add(drain);
+			sink.onRequest((demand) -> drain.run());
+			sink.onDispose(() -> this.subscribers.remove(drain));
+		}, FluxSink.OverflowStrategy.ERROR);
+	}
+
+	private boolean offer(Message<?> message) {
+		while (true) {
+			long position = this.tail.get();
+			int slot = (int) (position & this.mask);
+			long difference = this.sequences.get(slot) - position;
+			if (difference == 0) {
+				if (this.tail.compareAndSet(position, position + 1)) {
+					this.slots.set(slot, message);
+					this.sequences.set(slot, position + 1);
+					return true;
+				}
+			}
+			else if (difference < 0) {
+				return false;
+			}
+		}
+	}
+
+	private Message<?> poll() {
+		while (true) {
+			long position = this.head.get();
+			int slot = (int) (position & this.mask);
+			long difference = this.sequences.get(slot) - (position + 1);
+			if (difference == 0) {
+				if (this.head.compareAndSet(position, position + 1)) {
+					Message<?> message = this.slots.getAndSet(slot, null);
+					this.sequences.set(slot, position + this.capacity);
+					return message;
+				}
+			}
+			else if (difference < 0) {
+				return null;
+			}
+		}
+	}
+
+	private static long deadline(long timeout) {
+		return timeout < 0 ? Long.MAX_VALUE : System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+	}
+
+	private static boolean await(Attempt attempt, long deadline) {
+		long parkNanos = 1_000;
+		while (!attempt.succeeded()) {
+			if (Thread.currentThread().isInterrupted() || System.nanoTime() >= deadline) {
+				return false;
+			}
+			LockSupport.parkNanos(parkNanos);
+			parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+		}
+		return true;
+	}
+
+	@FunctionalInterface
+	private interface Attempt {
+
+		boolean succeeded();
+
+	}
+
+}
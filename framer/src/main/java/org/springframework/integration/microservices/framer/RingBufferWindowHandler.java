@@ -0,0 +1,64 @@
+package org.springframework.integration.microservices.framer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.integration.handler.AbstractReplyProducingMessageHandler;
+import org.springframework.messaging.Message;
+import org.springframework.util.Assert;
+
+public class RingBufferWindowHandler extends AbstractReplyProducingMessageHandler {
+
+	private final int windowSize;
+
+	private final int stride;
+
+	private final Object[] ring;
+
+	private long count;
+
+	private WindowAggregator windowAggregator;
+
+	public RingBufferWindowHandler(int windowSize, int stride) {
+		Assert.isTrue(windowSize > 0, "'windowSize' must be greater than 0");
+		Assert.isTrue(stride > 0, "'stride' must be greater than 0");
+		this.windowSize = windowSize;
+		this.stride = stride;
+		this.ring = new Object[windowSize];
+	}
+
+	public void setWindowAggregator(WindowAggregator windowAggregator) {
+		this.windowAggregator = windowAggregator;
+	}
+
+	@Override
+	protected synchronized Object handleRequestMessage(Message<?> requestMessage) {
+		Object payload = requestMessage.getPayload();
+		int slot = (int) (this.count % this.windowSize);
+		if (this.windowAggregator != null) {
+			if (this.count >= this.windowSize) {
+				this.windowAggregator.evict((Number) this.ring[slot]);
+			}
+			this.windowAggregator.add((Number) payload);
+		}
+		this.ring[slot] = payload;
+		this.count++;
+		long windowStart = this.count - this.windowSize;
+		if (windowStart < 0 || windowStart % this.stride != 0) {
+			return null;
+		}
+		return getMessageBuilderFactory()
+				.withPayload(this.windowAggregator != null ? this.windowAggregator.result() : currentWindow(windowStart))
+				.setCorrelationId(windowStart)
+				.setSequenceSize(this.windowSize);
+	}
+
+	private List<Object> currentWindow(long windowStart) {
+		List<Object> window = new ArrayList<>(this.windowSize);
+		for (long index = windowStart; index < this.count; index++) {
+			window.add(this.ring[(int) (index % this.windowSize)]);
+		}
+		return window;
+	}
+
+}
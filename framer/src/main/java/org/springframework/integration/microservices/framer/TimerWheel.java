@@ -0,0 +1,67 @@
+package org.springframework.integration.microservices.framer;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.springframework.util.Assert;
+
+public class TimerWheel<T> {
+
+	private final long tickMillis;
+
+	private final List<List<Timer<T>>> buckets;
+
+	private final int mask;
+
+	private long currentTick = Long.MIN_VALUE;
+
+	public TimerWheel(long tickMillis, int wheelSize) {
+		Assert.isTrue(tickMillis > 0, "'tickMillis' must be greater than 0");
+		Assert.isTrue(Integer.bitCount(wheelSize) == 1, "'wheelSize' must be a power of 2");
+		this.tickMillis = tickMillis;
+		this.mask = wheelSize - 1;
+		this.buckets = new ArrayList<>(wheelSize);
+		for (int i = 0; i < wheelSize; i++) {
+			this.buckets.add(new ArrayList<>());
+		}
+	}
+
+	public void schedule(long deadline, T item) {
+		this.buckets.get((int) (tick(deadline) & this.mask)).add(new Timer<>(deadline, item));
+	}
+
+	public void advanceTo(long time, Consumer<T> expired) {
+		long targetTick = tick(time);
+		// Only the buckets for the passed ticks are visited, not all the scheduled timers
+		long fromTick =
+				this.currentTick == Long.MIN_VALUE || targetTick - this.currentTick > this.mask
+						? targetTick - this.mask
+						: this.currentTick;
+		List<Timer<T>> expiredTimers = new ArrayList<>();
+		for (long tick = fromTick; tick <= targetTick; tick++) {
+			Iterator<Timer<T>> timers = this.buckets.get((int) (tick & this.mask)).iterator();
+			while (timers.hasNext()) {
+				Timer<T> timer = timers.next();
+				if (timer.deadline() <= time) {
+					timers.remove();
+					expiredTimers.add(timer);
+				}
+			}
+		}
+		this.currentTick = Math.max(this.currentTick, targetTick);
+		expiredTimers.sort(Comparator.comparingLong(Timer::deadline));
+		expiredTimers.forEach((timer) -> expired.accept(timer.item()));
+	}
+
+	private long tick(long time) {
+		return Math.floorDiv(time, this.tickMillis);
+	}
+
+	private record Timer<T>(long deadline, T item) {
+
+	}
+
+}
@@ -0,0 +1,13 @@
+package org.springframework.integration.microservices.framer;
+
+public interface WindowAggregator {
+
+	void add(Number value);
+
+	void evict(Number value);
+
+	void merge(WindowAggregator other);
+
+	Number result();
+
+}
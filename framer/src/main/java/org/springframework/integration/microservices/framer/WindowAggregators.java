@@ -0,0 +1,233 @@
+package org.springframework.integration.microservices.framer;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.springframework.util.Assert;
+
+public final class WindowAggregators {
+
+	private static final Comparator<Number> EXACT_ORDER = WindowAggregators::compareExactly;
+
+	private WindowAggregators() {
+	}
+
+	public static Supplier<WindowAggregator> forFunction(String function) {
+		return switch (function) {
+			case "sum" -> SumAggregator::new;
+			case "count" -> CountAggregator::new;
+			case "avg", "average" -> AverageAggregator::new;
+			case "min" -> () -> new ExtremumAggregator(EXACT_ORDER);
+			case "max" -> () -> new ExtremumAggregator(EXACT_ORDER.reversed());
+			default -> throw new IllegalArgumentException("Unknown window function: " + function);
+		};
+	}
+
+	public static Number aggregate(WindowAggregator aggregator, List<?> window) {
+		window.forEach((value) -> aggregator.add((Number) value));
+		return aggregator.result();
+	}
+
+	private static boolean isIntegral(Number value) {
+		return value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte;
+	}
+
+	// Integral values are compared as longs, others exactly as BigDecimals, the same way they are summed
+	private static int compareExactly(Number left, Number right) {
+		if (isIntegral(left) && isIntegral(right)) {
+			return Long.compare(left.longValue(), right.longValue());
+		}
+		if (!isFinite(left) || !isFinite(right)) {
+			return Double.compare(left.doubleValue(), right.doubleValue());
+		}
+		return exactValue(left).compareTo(exactValue(right));
+	}
+
+	private static boolean isFinite(Number value) {
+		return !(value instanceof Double || value instanceof Float) || Double.isFinite(value.doubleValue());
+	}
+
+	private static BigDecimal exactValue(Number value) {
+		if (isIntegral(value)) {
+			return BigDecimal.valueOf(value.longValue());
+		}
+		if (value instanceof BigDecimal decimal) {
+			return decimal;
+		}
+		if (value instanceof BigInteger integer) {
+			return new BigDecimal(integer);
+		}
+		// The exact binary value of the double
+		return new BigDecimal(value.doubleValue());
+	}
+
+	// Integral values are summed exactly in a long (and a BigDecimal on overflow), others are summed exactly
+	// in a BigDecimal, so subtracting evicted values never drifts from the sum of the current window
+	private static class SumAggregator implements WindowAggregator {
+
+		long longSum;
+
+		BigDecimal decimalSum = BigDecimal.ZERO;
+
+		boolean floatingInput;
+
+		boolean decimalInput;
+
+		long count;
+
+		@Override
+		public void add(Number value) {
+			accumulate(value, false);
+			this.count++;
+		}
+
+		@Override
+		public void evict(Number value) {
+			accumulate(value, true);
+			this.count--;
+		}
+
+		private void accumulate(Number value, boolean subtract) {
+			if (isIntegral(value)) {
+				long longValue = value.longValue();
+				try {
+					this.longSum = subtract ? Math.subtractExact(this.longSum, longValue) : Math.addExact(this.longSum, longValue);
+					return;
+				}
+				catch (ArithmeticException ex) {
+					// Overflow: this value goes to the BigDecimal part
+				}
+				accumulate(BigDecimal.valueOf(longValue), subtract);
+			}
+			else if (value instanceof BigDecimal decimal) {
+				this.decimalInput = true;
+				accumulate(decimal, subtract);
+			}
+			else if (value instanceof BigInteger integer) {
+				this.decimalInput = true;
+				accumulate(new BigDecimal(integer), subtract);
+			}
+			else {
+				this.floatingInput = true;
+				// The exact binary value of the double
+				accumulate(new BigDecimal(value.doubleValue()), subtract);
+			}
+		}
+
+		private void accumulate(BigDecimal value, boolean subtract) {
+			this.decimalSum = subtract ? this.decimalSum.subtract(value) : this.decimalSum.add(value);
+		}
+
+		@Override
+		public void merge(WindowAggregator other) {
+			Assert.isInstanceOf(SumAggregator.class, other);
+			SumAggregator otherSum = (SumAggregator) other;
+			accumulate(otherSum.longSum, false);
+			accumulate(otherSum.decimalSum, false);
+			this.floatingInput |= otherSum.floatingInput;
+			this.decimalInput |= otherSum.decimalInput;
+			this.count += otherSum.count;
+		}
+
+		@Override
+		public Number result() {
+			if (!this.floatingInput && !this.decimalInput && this.decimalSum.signum() == 0) {
+				return this.longSum;
+			}
+			BigDecimal sum = total();
+			if (this.decimalInput) {
+				return sum;
+			}
+			if (this.floatingInput) {
+				return sum.doubleValue();
+			}
+			// Only integral values which have overflowed a long
+			BigInteger integralSum = sum.toBigInteger();
+			return integralSum.bitLength() < Long.SIZE ? integralSum.longValue() : integralSum;
+		}
+
+		BigDecimal total() {
+			return this.decimalSum.add(BigDecimal.valueOf(this.longSum));
+		}
+
+	}
+
+	private static class AverageAggregator extends SumAggregator {
+
+		@Override
+		public Number result() {
+			if (this.count == 0) {
+				return Double.NaN;
+			}
+			if (this.decimalInput) {
+				return total().divide(BigDecimal.valueOf(this.count), MathContext.DECIMAL128);
+			}
+			if (this.floatingInput || this.decimalSum.signum() != 0) {
+				return total().doubleValue() / this.count;
+			}
+			return (double) this.longSum / this.count;
+		}
+
+	}
+
+	private static class CountAggregator extends SumAggregator {
+
+		@Override
+		public Number result() {
+			return this.count;
+		}
+
+	}
+
+	// A monotonic deque: only the values which may still become an extremum after
+	// the eviction of the older ones are kept, so the head is always the result
+	private static class ExtremumAggregator implements WindowAggregator {
+
+		private final Deque<Number> candidates = new ArrayDeque<>();
+
+		private final Comparator<Number> order;
+
+		ExtremumAggregator(Comparator<Number> order) {
+			this.order = order;
+		}
+
+		@Override
+		public void add(Number value) {
+			while (!this.candidates.isEmpty() && compare(this.candidates.peekLast(), value) > 0) {
+				this.candidates.pollLast();
+			}
+			this.candidates.addLast(value);
+		}
+
+		@Override
+		public void evict(Number value) {
+			// Equal values are all kept as candidates, so evict only the oldest one
+			if (!this.candidates.isEmpty() && compare(this.candidates.peekFirst(), value) == 0) {
+				this.candidates.pollFirst();
+			}
+		}
+
+		@Override
+		public void merge(WindowAggregator other) {
+			Assert.isInstanceOf(ExtremumAggregator.class, other);
+			((ExtremumAggregator) other).candidates.forEach(this::add);
+		}
+
+		@Override
+		public Number result() {
+			return this.candidates.peekFirst();
+		}
+
+		private int compare(Number left, Number right) {
+			return this.order.compare(left, right);
+		}
+
+	}
+
+}
@@ -1,14 +1,39 @@
 package org.springframework.integration.microservices.framer;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.assertj.core.api.InstanceOfAssertFactories;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.integration.store.MessageGroupStore;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
@@ -20,6 +45,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 @SpringBootTest
 class FramerApplicationTests {
 
+	private static final Log LOGGER = LogFactory.getLog(FramerApplicationTests.class);
+
 	@Autowired
 	@Qualifier("framer.input")
 	MessageChannel framerInput;
@@ -56,4 +83,521 @@ class FramerApplicationTests {
 		assertThat(this.messageGroupStore.getMessageGroupCount()).isEqualTo(2);
 	}
 
+	@Test
+	void splitterAssignsEventsToWindowsBySizeAndStride() {
+		CountWindowSplitter splitter = new CountWindowSplitter(4, 2);
+		List<List<Object>> windowStarts =
+				IntStream.range(0, 6)
+						.mapToObj((event) -> splitter.slidingWindows(event)
+								.stream()
+								.map(MessageBuilder::build)
+								.map((message) -> message.getHeaders().get("correlationId"))
+								.toList())
+						.toList();
+
+		assertThat(windowStarts).containsExactly(
+				List.of(0L), List.of(0L), List.of(2L, 0L), List.of(2L, 0L), List.of(4L, 2L), List.of(4L, 2L));
+	}
+
+	@Test
+	void ringBufferEmitsSlidingTumblingAndSamplingWindows() {
+		assertThat(ringBufferWindows(4, 2, 10))
+				.containsExactly(List.of(0, 1, 2, 3), List.of(2, 3, 4, 5), List.of(4, 5, 6, 7), List.of(6, 7, 8, 9));
+		assertThat(ringBufferWindows(3, 3, 10))
+				.containsExactly(List.of(0, 1, 2), List.of(3, 4, 5), List.of(6, 7, 8));
+		assertThat(ringBufferWindows(2, 3, 10))
+				.containsExactly(List.of(0, 1), List.of(3, 4), List.of(6, 7));
+	}
+
+	private static List<Object> ringBufferWindows(int size, int stride, int events) {
+		QueueChannel windows = new QueueChannel();
+		RingBufferWindowHandler windowHandler = new RingBufferWindowHandler(size, stride);
+		windowHandler.setOutputChannel(windows);
+		IntStream.range(0, events).forEach((event) -> windowHandler.handleMessage(new GenericMessage<>(event)));
+		return windows.clear().stream().<Object>map(Message::getPayload).toList();
+	}
+
+	@Test
+	void tumblingEventTimeWindows() {
+		QueueChannel windows = new QueueChannel();
+		EventTimeWindowHandler windowHandler = eventTimeWindows(EventTimeWindowHandler.tumbling(Duration.ofMillis(10)),
+				windows);
+
+		sendEvents(windowHandler, 1, 5, 12, 25);
+
+		assertThat(windows.clear())
+				.extracting((message) -> (Object) message.getPayload())
+				.containsExactly(List.of(1, 5), List.of(12));
+	}
+
+	@Test
+	void slidingEventTimeWindows() {
+		QueueChannel windows = new QueueChannel();
+		EventTimeWindowHandler windowHandler =
+				eventTimeWindows(EventTimeWindowHandler.sliding(Duration.ofMillis(10), Duration.ofMillis(5)), windows);
+
+		sendEvents(windowHandler, 1, 6, 12, 30);
+
+		List<Message<?>> emitted = windows.clear();
+		assertThat(emitted)
+				.extracting((message) -> (Object) message.getPayload())
+				.containsExactly(List.of(1), List.of(1, 6), List.of(6, 12), List.of(12));
+		assertThat(emitted)
+				.extracting((window) -> window.getHeaders().get(EventTimeWindowHandler.WINDOW_START))
+				.containsExactly(-5L, 0L, 5L, 10L);
+	}
+
+	@Test
+	void sessionEventTimeWindows() {
+		QueueChannel windows = new QueueChannel();
+		EventTimeWindowHandler windowHandler = eventTimeWindows(EventTimeWindowHandler.session(Duration.ofMillis(10)),
+				windows);
+
+		sendEvents(windowHandler, 1, 5, 30, 35, 60);
+
+		List<Message<?>> emitted = windows.clear();
+		assertThat(emitted)
+				.extracting((message) -> (Object) message.getPayload())
+				.containsExactly(List.of(1, 5), List.of(30, 35));
+		assertThat(emitted.get(0).getHeaders())
+				.containsEntry(EventTimeWindowHandler.WINDOW_START, 1L)
+				.containsEntry(EventTimeWindowHandler.WINDOW_END, 15L);
+	}
+
+	@Test
+	void lateEventsWithinAllowedLatenessAreWindowed() {
+		QueueChannel windows = new QueueChannel();
+		QueueChannel discarded = new QueueChannel();
+		EventTimeWindowHandler windowHandler = eventTimeWindows(EventTimeWindowHandler.tumbling(Duration.ofMillis(10)),
+				windows);
+		windowHandler.setAllowedLateness(Duration.ofMillis(10));
+		windowHandler.setDiscardChannel(discarded);
+
+		// 8 is out of order, but within the lateness; 3 comes after its window has been emitted
+		sendEvents(windowHandler, 1, 15, 8, 25, 3, 40);
+
+		assertThat(windows.clear())
+				.extracting((message) -> (Object) message.getPayload())
+				.containsExactly(List.of(1, 8), List.of(15), List.of(25));
+		assertThat(discarded.clear()).extracting((message) -> (Object) message.getPayload()).containsExactly(3);
+	}
+
+	@Test
+	void lateEventsWithinAllowedLatenessJoinOpenSessions() {
+		QueueChannel windows = new QueueChannel();
+		QueueChannel discarded = new QueueChannel();
+		EventTimeWindowHandler windowHandler = eventTimeWindows(EventTimeWindowHandler.session(Duration.ofMillis(10)),
+				windows);
+		windowHandler.setAllowedLateness(Duration.ofMillis(5));
+		windowHandler.setDiscardChannel(discarded);
+
+		// The session [0, 34) is still open when 5 arrives, although [5, 15) alone is behind the watermark of 19
+		sendEvents(windowHandler, 0, 8, 16, 24, 5, 50);
+
+		assertThat(windows.clear())
+				.extracting((message) -> (Object) message.getPayload())
+				.containsExactly(List.of(0, 5, 8, 16, 24));
+		assertThat(discarded.clear()).isEmpty();
+	}
+
+	private static EventTimeWindowHandler eventTimeWindows(EventTimeWindowHandler windowHandler,
+			QueueChannel windows) {
+
+		windowHandler.setEventTimeHeader("eventTime");
+		windowHandler.setTimerWheel(1, 64);
+		windowHandler.setOutputChannel(windows);
+		return windowHandler;
+	}
+
+	private static void sendEvents(EventTimeWindowHandler windowHandler, int... eventTimes) {
+		for (int eventTime : eventTimes) {
+			windowHandler.handleMessage(
+					MessageBuilder.withPayload(eventTime)
+							.setHeader("eventTime", eventTime)
+							.build());
+		}
+	}
+
+	@Test
+	void aggregatorsAddEvictAndMerge() {
+		WindowAggregator sum = WindowAggregators.forFunction("sum").get();
+		WindowAggregator count = WindowAggregators.forFunction("count").get();
+		WindowAggregator average = WindowAggregators.forFunction("avg").get();
+		WindowAggregator min = WindowAggregators.forFunction("min").get();
+		WindowAggregator max = WindowAggregators.forFunction("max").get();
+		List<WindowAggregator> aggregators = List.of(sum, count, average, min, max);
+
+		List.of(5, 3, 3, 8).forEach((value) -> aggregators.forEach((aggregator) -> aggregator.add(value)));
+		assertThat(sum.result()).isEqualTo(19L);
+		assertThat(count.result()).isEqualTo(4L);
+		assertThat(average.result()).isEqualTo(4.75);
+		assertThat(min.result()).isEqualTo(3);
+		assertThat(max.result()).isEqualTo(8);
+
+		// The window slides by two: [3, 8, 1, 2]
+		List.of(5, 3).forEach((value) -> aggregators.forEach((aggregator) -> aggregator.evict(value)));
+		List.of(1, 2).forEach((value) -> aggregators.forEach((aggregator) -> aggregator.add(value)));
+		assertThat(sum.result()).isEqualTo(14L);
+		assertThat(count.result()).isEqualTo(4L);
+		assertThat(average.result()).isEqualTo(3.5);
+		assertThat(min.result()).isEqualTo(1);
+		assertThat(max.result()).isEqualTo(8);
+
+		WindowAggregator otherSum = WindowAggregators.forFunction("sum").get();
+		otherSum.add(Long.MAX_VALUE);
+		sum.merge(otherSum);
+		assertThat(sum.result()).isEqualTo(new BigDecimal(Long.MAX_VALUE).add(BigDecimal.valueOf(14)).toBigInteger());
+		sum.evict(Long.MAX_VALUE);
+		assertThat(sum.result()).isEqualTo(14L);
+
+		WindowAggregator decimalSum = WindowAggregators.forFunction("sum").get();
+		decimalSum.add(new BigDecimal("0.10"));
+		decimalSum.add(new BigDecimal("0.20"));
+		assertThat(decimalSum.result()).isEqualTo(new BigDecimal("0.30"));
+	}
+
+	@Test
+	void minAndMaxCompareValuesExactly() {
+		WindowAggregator min = WindowAggregators.forFunction("min").get();
+		WindowAggregator max = WindowAggregators.forFunction("max").get();
+		List<WindowAggregator> aggregators = List.of(min, max);
+
+		// Both are the same double
+		long large = (1L << 53) + 1;
+		List.of(large, large - 1).forEach((value) -> aggregators.forEach((aggregator) -> aggregator.add(value)));
+		assertThat(min.result()).isEqualTo(large - 1);
+		assertThat(max.result()).isEqualTo(large);
+
+		aggregators.forEach((aggregator) -> aggregator.evict(large));
+		assertThat(max.result()).isEqualTo(large - 1);
+
+		WindowAggregator decimalMin = WindowAggregators.forFunction("min").get();
+		WindowAggregator decimalMax = WindowAggregators.forFunction("max").get();
+		List<Number> decimals =
+				List.of(new BigDecimal("0.10000000000000000001"), new BigDecimal("0.1"),
+						new BigInteger("18446744073709551617"), new BigInteger("18446744073709551616"), 0.5);
+		decimals.forEach((value) -> List.of(decimalMin, decimalMax).forEach((aggregator) -> aggregator.add(value)));
+		assertThat(decimalMin.result()).isEqualTo(new BigDecimal("0.1"));
+		assertThat(decimalMax.result()).isEqualTo(new BigInteger("18446744073709551617"));
+	}
+
+	@Test
+	void floatingSumDoesNotDriftOnEviction() {
+		int windowSize = 10;
+		double[] values = new Random(42).doubles(1_000_000, -1e9, 1e9).map((value) -> value / 1e3 + 0.1).toArray();
+		WindowAggregator sum = WindowAggregators.forFunction("sum").get();
+		for (int i = 0; i < values.length; i++) {
+			if (i >= windowSize) {
+				sum.evict(values[i - windowSize]);
+			}
+			sum.add(values[i]);
+		}
+
+		BigDecimal expected = BigDecimal.ZERO;
+		for (int i = values.length - windowSize; i < values.length; i++) {
+			expected = expected.add(new BigDecimal(values[i]));
+		}
+		assertThat(sum.result()).isEqualTo(expected.doubleValue());
+	}
+
+	@Test
+	void incrementalAggregationOutpacesRescanning() {
+		int windowSize = 1000;
+		int events = 20_000;
+
+		QueueChannel windows = new QueueChannel();
+		RingBufferWindowHandler rescanningHandler = new RingBufferWindowHandler(windowSize, 1);
+		rescanningHandler.setOutputChannel(windows);
+		long start = System.nanoTime();
+		for (int event = 0; event < events; event++) {
+			rescanningHandler.handleMessage(new GenericMessage<>(event));
+			Message<?> window = windows.receive(0);
+			if (window != null) {
+				WindowAggregators.aggregate(WindowAggregators.forFunction("sum").get(), (List<?>) window.getPayload());
+			}
+		}
+		long rescanningNanos = System.nanoTime() - start;
+
+		RingBufferWindowHandler incrementalHandler = new RingBufferWindowHandler(windowSize, 1);
+		incrementalHandler.setWindowAggregator(WindowAggregators.forFunction("sum").get());
+		incrementalHandler.setOutputChannel(windows);
+		Number lastSum = null;
+		start = System.nanoTime();
+		for (int event = 0; event < events; event++) {
+			incrementalHandler.handleMessage(new GenericMessage<>(event));
+			Message<?> window = windows.receive(0);
+			if (window != null) {
+				lastSum = (Number) window.getPayload();
+			}
+		}
+		long incrementalNanos = System.nanoTime() - start;
+
+		int windowCount = events - windowSize + 1;
+		LOGGER.info(String.format("Sum over %d windows of %d events: %d ns/window rescanning, %d ns/window incremental",
+				windowCount, windowSize, rescanningNanos / windowCount, incrementalNanos / windowCount));
+
+		assertThat(lastSum).isEqualTo(IntStream.range(events - windowSize, events).asLongStream().sum());
+		assertThat(incrementalNanos).isLessThan(rescanningNanos);
+	}
+
+	@Test
+	void ringBufferChannelDeliversConcurrentProducersToConcurrentConsumers() throws Exception {
+		int producers = 4;
+		int consumers = 4;
+		int messagesPerProducer = 50_000;
+		RingBufferChannel channel = new RingBufferChannel(256, RingBufferChannel.OverflowPolicy.BLOCK);
+		AtomicInteger remaining = new AtomicInteger(producers * messagesPerProducer);
+		// Every consumer must see the messages of the same producer in the order they have been sent
+		List<String> orderViolations = new ArrayList<>();
+		ConcurrentHashMap<Integer, Boolean> received = new ConcurrentHashMap<>();
+		ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+		try {
+			long start = System.nanoTime();
+			List<Future<?>> futures = new ArrayList<>();
+			for (int consumer = 0; consumer < consumers; consumer++) {
+				futures.add(executor.submit(() -> {
+					int[] lastSequence = new int[producers];
+					Arrays.fill(lastSequence, -1);
+					while (remaining.get() > 0) {
+						Message<?> message = channel.receive(10);
+						if (message != null) {
+							int payload = (Integer) message.getPayload();
+							int producer = payload / messagesPerProducer;
+							int sequence = payload % messagesPerProducer;
+							if (sequence <= lastSequence[producer]) {
+								synchronized (orderViolations) {
+									orderViolations.add(producer + ": " + sequence + " after " + lastSequence[producer]);
+								}
+							}
+							lastSequence[producer] = sequence;
+							received.put(payload, Boolean.TRUE);
+							remaining.decrementAndGet();
+						}
+					}
+				}));
+			}
+			for (int producer = 0; producer < producers; producer++) {
+				int firstPayload = producer * messagesPerProducer;
+				futures.add(executor.submit(() -> {
+					for (int sequence = 0; sequence < messagesPerProducer; sequence++) {
+						assertThat(channel.send(new GenericMessage<>(firstPayload + sequence), 10_000)).isTrue();
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+			long elapsedNanos = System.nanoTime() - start;
+
+			LOGGER.info(String.format("RingBufferChannel: %d producers, %d consumers, %d messages/s",
+					producers, consumers, producers * messagesPerProducer * 1_000_000_000L / elapsedNanos));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(received).hasSize(producers * messagesPerProducer);
+		assertThat(orderViolations).isEmpty();
+		assertThat(channel.getQueueSize()).isEqualTo(0);
+		assertThat(channel.getDroppedCount()).isEqualTo(0);
+	}
+
+	@Test
+	void ringBufferChannelBlocksProducerUntilConsumed() throws Exception {
+		RingBufferChannel channel = new RingBufferChannel(2, RingBufferChannel.OverflowPolicy.BLOCK);
+		channel.send(new GenericMessage<>(1));
+		channel.send(new GenericMessage<>(2));
+
+		assertThat(channel.send(new GenericMessage<>(3), 50)).isFalse();
+		assertThat(channel.getDroppedCount()).isEqualTo(1);
+
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<Boolean> blockedSend = executor.submit(() -> channel.send(new GenericMessage<>(4), 10_000));
+			Thread.sleep(100);
+			assertThat(blockedSend).isNotDone();
+
+			assertThat(channel.receive(0)).extracting(Message::getPayload).isEqualTo(1);
+			assertThat(blockedSend.get(10, TimeUnit.SECONDS)).isTrue();
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(drain(channel)).containsExactly(2, 4);
+	}
+
+	@Test
+	void ringBufferChannelDropsOldestOnOverflow() {
+		RingBufferChannel channel = new RingBufferChannel(4, RingBufferChannel.OverflowPolicy.DROP_OLDEST);
+		IntStream.range(0, 6).forEach((payload) -> assertThat(channel.send(new GenericMessage<>(payload))).isTrue());
+
+		assertThat(channel.getQueueSize()).isEqualTo(4);
+		assertThat(channel.getDroppedCount()).isEqualTo(2);
+		assertThat(drain(channel)).containsExactly(2, 3, 4, 5);
+	}
+
+	@Test
+	void ringBufferChannelFailsSendOnOverflow() {
+		RingBufferChannel channel = new RingBufferChannel(2, RingBufferChannel.OverflowPolicy.FAIL);
+
+		assertThat(channel.send(new GenericMessage<>(1))).isTrue();
+		assertThat(channel.send(new GenericMessage<>(2))).isTrue();
+		assertThat(channel.send(new GenericMessage<>(3))).isFalse();
+
+		assertThat(channel.getDroppedCount()).isEqualTo(1);
+		assertThat(drain(channel)).containsExactly(1, 2);
+	}
+
+	@Test
+	void ringBufferChannelMetrics() {
+		RingBufferChannel channel = new RingBufferChannel(2, RingBufferChannel.OverflowPolicy.FAIL);
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		new FramerApplication().framerOutputMetrics(channel).bindTo(registry);
+
+		IntStream.range(0, 3).forEach((payload) -> channel.send(new GenericMessage<>(payload)));
+
+		assertThat(registry.get("framer.output.depth").gauge().value()).isEqualTo(2);
+		assertThat(registry.get("framer.output.dropped").functionCounter().count()).isEqualTo(1);
+
+		channel.receive(0);
+
+		assertThat(registry.get("framer.output.depth").gauge().value()).isEqualTo(1);
+	}
+
+	private static List<Object> drain(PollableChannel channel) {
+		List<Object> payloads = new ArrayList<>();
+		Message<?> message;
+		while ((message = channel.receive(0)) != null) {
+			payloads.add(message.getPayload());
+		}
+		return payloads;
+	}
+
+	@Test
+	void mappedFileStoreDropsCorruptedTailOnRecovery(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("corrupted");
+		MappedFileMessageStore messageStore = new MappedFileMessageStore(file, 64 * 1024);
+		messageStore.addMessageToGroup("window", new GenericMessage<>(1));
+		messageStore.addMessageToGroup("window", new GenericMessage<>(2));
+		byte[] before = Files.readAllBytes(file);
+		messageStore.addMessageToGroup("window", new GenericMessage<>(3));
+		messageStore.destroy();
+
+		// Flip a byte a few bytes into the first record appended for the third message
+		int appended = firstDifference(before, Files.readAllBytes(file));
+		overwrite(file, appended + 10, new byte[] { (byte) ~before[appended + 10] });
+
+		messageStore = new MappedFileMessageStore(file, 64 * 1024);
+		assertThat(payloads(messageStore, "window")).containsExactly(1, 2);
+
+		// The zeroed tail does not resurrect the dropped records after the next appends
+		messageStore.addMessageToGroup("window", new GenericMessage<>(4));
+		messageStore.destroy();
+		messageStore = new MappedFileMessageStore(file, 64 * 1024);
+		assertThat(payloads(messageStore, "window")).containsExactly(1, 2, 4);
+		messageStore.destroy();
+	}
+
+	@Test
+	void mappedFileStoreDropsTornRecordOnRecovery(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("torn");
+		MappedFileMessageStore messageStore = new MappedFileMessageStore(file, 64 * 1024);
+		messageStore.addMessageToGroup("window", new GenericMessage<>(1));
+		byte[] before = Files.readAllBytes(file);
+		messageStore.addMessageToGroup("window", new GenericMessage<>(2));
+		messageStore.destroy();
+
+		// Only the first bytes of the next record have reached the disk
+		int appended = firstDifference(before, Files.readAllBytes(file));
+		overwrite(file, appended + 8, new byte[64 * 1024 - appended - 8]);
+
+		messageStore = new MappedFileMessageStore(file, 64 * 1024);
+		assertThat(payloads(messageStore, "window")).containsExactly(1);
+		messageStore.destroy();
+	}
+
+	@Test
+	void mappedFileStoreCompactsWhenFull(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("compacted");
+		MappedFileMessageStore messageStore = new MappedFileMessageStore(file, 16 * 1024);
+		List<Message<?>> window = new ArrayList<>();
+		// Far more records than fit into the file: only the compaction of the removed ones makes room
+		for (int i = 0; i < 500; i++) {
+			Message<?> message = new GenericMessage<>(i);
+			messageStore.addMessageToGroup("window", message);
+			window.add(message);
+			if (window.size() > 3) {
+				messageStore.removeMessagesFromGroup("window", window.remove(0));
+			}
+		}
+		assertThat(payloads(messageStore, "window")).containsExactly(497, 498, 499);
+		assertThat(Files.exists(directory.resolve("compacted.compact"))).isFalse();
+		messageStore.destroy();
+
+		messageStore = new MappedFileMessageStore(file, 16 * 1024);
+		assertThat(payloads(messageStore, "window")).containsExactly(497, 498, 499);
+		messageStore.destroy();
+	}
+
+	@Test
+	void mappedFileStoreAppendsOnlyNewIdsToGroup(@TempDir Path directory) throws IOException {
+		Path file = directory.resolve("appended");
+		MappedFileMessageStore messageStore = new MappedFileMessageStore(file, 1024 * 1024);
+		messageStore.addMessageToGroup("window", new GenericMessage<>(0));
+		List<Integer> appendSizes = new ArrayList<>();
+		for (int i = 1; i < 100; i++) {
+			int before = usedBytes(file);
+			messageStore.addMessageToGroup("window", new GenericMessage<>(i));
+			appendSizes.add(usedBytes(file) - before);
+		}
+		messageStore.setLastReleasedSequenceNumberForGroup("window", 5);
+		messageStore.addMessageToGroup("window", new GenericMessage<>(100));
+		long lastModified = messageStore.getMessageGroup("window").getLastModified();
+		messageStore.destroy();
+
+		// Every add costs the same, no matter how many ids the group already has
+		assertThat(appendSizes).containsOnly(appendSizes.get(0));
+
+		messageStore = new MappedFileMessageStore(file, 1024 * 1024);
+		assertThat(payloads(messageStore, "window")).isEqualTo(IntStream.rangeClosed(0, 100).boxed().toList());
+		assertThat(messageStore.getMessageGroup("window").getLastReleasedMessageSequenceNumber()).isEqualTo(5);
+		assertThat(messageStore.getMessageGroup("window").getLastModified()).isEqualTo(lastModified);
+		messageStore.destroy();
+	}
+
+	private static List<Object> payloads(MessageGroupStore messageStore, Object groupId) {
+		return messageStore.getMessageGroup(groupId)
+				.getMessages()
+				.stream()
+				.<Object>map(Message::getPayload)
+				.sorted()
+				.toList();
+	}
+
+	private static int firstDifference(byte[] before, byte[] after) {
+		int index = 0;
+		while (before[index] == after[index]) {
+			index++;
+		}
+		return index;
+	}
+
+	// Walks the record lengths up to the zero length slot after the last record
+	private static int usedBytes(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		int position = 0;
+		int recordLength;
+		while ((recordLength = buffer.getInt(position)) != 0) {
+			position += Integer.BYTES + recordLength;
+		}
+		return position;
+	}
+
+	private static void overwrite(Path file, int position, byte[] bytes) throws IOException {
+		try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			fileChannel.write(ByteBuffer.wrap(bytes), position);
+		}
+	}
+
 }
@@ -0,0 +1,88 @@
+package org.springframework.integration.microservices.framer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.PollableChannel;
+import org.springframework.messaging.support.GenericMessage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+@SpringBootTest(properties = {
+		"framer.partition.count=4",
+		"framer.window.size=1"
+})
+class PartitionedFramerTests {
+
+	@Autowired
+	@Qualifier("framer.input")
+	MessageChannel framerInput;
+
+	@Autowired
+	@Qualifier("framer.output")
+	PollableChannel framerOutput;
+
+	@Autowired
+	FramerApplication.Framer framer;
+
+	@Test
+	void partitionedFramerKeepsOrderWithinKey() {
+		List<String> keys = IntStream.range(0, 16).mapToObj((key) -> "key-" + key).toList();
+		int eventsPerKey = 100;
+		for (int event = 0; event < eventsPerKey; event++) {
+			for (String key : keys) {
+				this.framerInput.send(
+						MessageBuilder.withPayload(event)
+								.setHeader("partitionKey", key)
+								.build());
+			}
+		}
+
+		Map<Object, List<Object>> eventsByKey = new HashMap<>();
+		for (int i = 0; i < keys.size() * eventsPerKey; i++) {
+			Message<?> window = this.framerOutput.receive(10_000);
+			assertThat(window).isNotNull();
+			eventsByKey.computeIfAbsent(window.getHeaders().get("partitionKey"), (key) -> new ArrayList<>())
+					.addAll((List<?>) window.getPayload());
+		}
+
+		List<Object> expectedEvents = IntStream.range(0, eventsPerKey).boxed().collect(Collectors.toList());
+		assertThat(eventsByKey).hasSize(keys.size());
+		assertThat(eventsByKey.values()).allSatisfy((events) -> assertThat(events).isEqualTo(expectedEvents));
+	}
+
+	@Test
+	void partitionKeysAreSpreadOverAllShards() {
+		Map<Integer, Long> keysPerShard =
+				IntStream.range(0, 64)
+						.mapToObj((key) -> MessageBuilder.withPayload(key).setHeader("partitionKey", "key-" + key).build())
+						.collect(Collectors.groupingBy(this.framer::partition, Collectors.counting()));
+
+		assertThat(keysPerShard).containsOnlyKeys(0, 1, 2, 3);
+		assertThat(keysPerShard.values()).allSatisfy((keys) -> assertThat(keys).isBetween(12L, 20L));
+	}
+
+	@Test
+	void messageWithoutPartitionKeyIsRejected() {
+		assertThatExceptionOfType(MessagingException.class)
+				.isThrownBy(() -> this.framerInput.send(new GenericMessage<>(1)))
+				.withStackTraceContaining("No partition key");
+
+		assertThat(this.framerOutput.receive(100)).isNull();
+	}
+
+}
@@ -1,16 +1,24 @@
 package org.springframework.integration.microservices.mrpc;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import reactor.core.publisher.Mono;
+
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.context.annotation.Bean;
-import org.springframework.integration.dsl.HeaderEnricherSpec;
+import org.springframework.integration.channel.DirectChannel;
 import org.springframework.integration.dsl.IntegrationFlow;
-import org.springframework.integration.support.channel.HeaderChannelRegistry;
+import org.springframework.integration.dsl.IntegrationFlowBuilder;
+import org.springframework.integration.support.MessageBuilder;
 import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.scheduling.TaskScheduler;
 
 @SpringBootApplication
 public class MrpcApplication {
@@ -20,22 +28,91 @@ public class MrpcApplication {
 	}
 
 	@Bean
-	IntegrationFlow requestFlow(StreamBridge streamBridge,
-			@Value("${spring.cloud.stream.mrpc.request.destination}") String requests) {
+	ReplyCorrelator replyCorrelator(TaskScheduler taskScheduler,
+			@Value("${mrpc.reply-timeout.tick:10}") long tickMillis,
+			@Value("${mrpc.reply-timeout.wheel-size:512}") int wheelSize,
+			@Value("${mrpc.reply-dedup.window:60000}") long dedupWindow,
+			@Value("${mrpc.reply-dedup.capacity:100000}") int dedupCapacity) {
+
+		ReplyCorrelator replyCorrelator = new ReplyCorrelator(taskScheduler, tickMillis, wheelSize);
+		replyCorrelator.setDedupWindowMillis(dedupWindow);
+		replyCorrelator.setDedupCapacity(dedupCapacity);
+		return replyCorrelator;
+	}
+
+	@Bean
+	DirectChannel mrpcRequests() {
+		return new DirectChannel();
+	}
+
+	@Bean
+	IntegrationFlow requestFlow(MessageChannel mrpcRequests, ReplyCorrelator replyCorrelator,
+			@Value("${spring.cloud.stream.mrpc.request.destination}") String requests,
+			@Value("${mrpc.reply-timeout:30000}") long replyTimeout) {
 
 		return IntegrationFlow.from(UpperCaseGateway.class)
-				.enrichHeaders(HeaderEnricherSpec::headerChannelsToString)
-				.handle((message) -> streamBridge.send(requests, message))
+				.handle(Message.class, (message, headers) -> {
+					String correlationId = replyCorrelator.nextCorrelationId();
+					// The reply future is completed directly by the replies consumer: no reply channel goes over the wire
+					Message<?> request =
+							MessageBuilder.fromMessage(message)
+									.removeHeaders(MessageHeaders.REPLY_CHANNEL, MessageHeaders.ERROR_CHANNEL,
+											ReplyCorrelator.REPLY_TIMEOUT)
+									.setHeader(ReplyCorrelator.CORRELATION_ID, correlationId)
+									.build();
+					Long timeout = headers.get(ReplyCorrelator.REPLY_TIMEOUT, Long.class);
+					CompletableFuture<Object> reply =
+							replyCorrelator.register(correlationId, requests, timeout != null ? timeout : replyTimeout)
+									.thenApply(Message::getPayload);
+					try {
+						mrpcRequests.send(request);
+					}
+					catch (RuntimeException ex) {
+						// Not sent: nothing to wait for until the timeout
+						replyCorrelator.fail(correlationId, ex);
+						throw ex;
+					}
+					return reply;
+				}, endpoint -> endpoint.async(true))
+				.get();
+	}
+
+	@Bean
+	OutputBindingSender requestSender(ReplyCorrelator replyCorrelator) {
+		OutputBindingSender requestSender = new OutputBindingSender("requests-out-0");
+		requestSender.setReplyCorrelator(replyCorrelator);
+		return requestSender;
+	}
+
+	@Bean
+	IntegrationFlow requestSendingFlow(MessageChannel mrpcRequests, OutputBindingSender requestSender,
+			ObjectMapper objectMapper,
+			@Value("${mrpc.batch.size:0}") int batchSize,
+			@Value("${mrpc.batch.window:10}") long batchWindow) {
+
+		IntegrationFlowBuilder flow = IntegrationFlow.from(mrpcRequests);
+		if (batchSize > 1) {
+			// Concurrent requests are coalesced into a single broker message
+			flow.aggregate(aggregator -> aggregator
+					.correlationStrategy(message -> RequestBatches.CORRELATION_IDS)
+					.releaseStrategy(group -> group.size() >= batchSize)
+					// The window is counted from the first request in the batch, not reset by every next one
+					.groupTimeout((group) ->
+							Math.max(1, batchWindow - (System.currentTimeMillis() - group.getTimestamp())))
+					.sendPartialResultOnExpiry(true)
+					.expireGroupsUponCompletion(true)
+					.outputProcessor(group -> RequestBatches.batch(group.getMessages(), objectMapper)));
+		}
+		return flow
+				.handle(requestSender)
 				.get();
 	}
 
 	@Bean
-	IntegrationFlow repliesFlow(HeaderChannelRegistry channelRegistry) {
+	IntegrationFlow repliesFlow(ReplyCorrelator replyCorrelator, ObjectMapper objectMapper) {
 		return IntegrationFlow.from(MessageConsumer.class, gateway -> gateway.beanName("replies"))
-				.filter(Message.class,
-						(message) ->
-								channelRegistry.channelNameToChannel(
-										(message).getHeaders().getReplyChannel().toString()) != null)
+				.split(Message.class, (message) -> RequestBatches.replies(message, objectMapper))
+				.handle((message) -> replyCorrelator.complete(message))
 				.get();
 	}
 
@@ -47,6 +124,12 @@ public class MrpcApplication {
 
 		String toUpperCase(String payload);
 
+		Mono<String> toUpperCaseReactive(String payload, @Header(ReplyCorrelator.REPLY_TIMEOUT) long timeoutMillis);
+
+		default CompletableFuture<String> toUpperCaseAsync(String payload, long timeoutMillis) {
+			return toUpperCaseReactive(payload, timeoutMillis).toFuture();
+		}
+
 	}
 
 }
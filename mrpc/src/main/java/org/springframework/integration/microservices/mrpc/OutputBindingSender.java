@@ -0,0 +1,76 @@
+package org.springframework.integration.microservices.mrpc;
+
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.MimeTypeUtils;
+
+public class OutputBindingSender implements MessageHandler, BeanFactoryAware, SmartInitializingSingleton {
+
+	private final String bindingName;
+
+	private BeanFactory beanFactory;
+
+	private MessageChannel outputBinding;
+
+	private ReplyCorrelator replyCorrelator;
+
+	public OutputBindingSender(String bindingName) {
+		this.bindingName = bindingName;
+	}
+
+	public void setReplyCorrelator(ReplyCorrelator replyCorrelator) {
+		this.replyCorrelator = replyCorrelator;
+	}
+
+	@Override
+	public void setBeanFactory(BeanFactory beanFactory) {
+		this.beanFactory = beanFactory;
+	}
+
+	@Override
+	public void afterSingletonsInstantiated() {
+		// The binding channel is resolved once instead of a StreamBridge destination lookup on every send.
+		// Its interceptors still run, but a byte[] payload goes through their content type conversion as is
+		this.outputBinding = this.beanFactory.getBean(this.bindingName, MessageChannel.class);
+	}
+
+	@Override
+	public void handleMessage(Message<?> message) {
+		try {
+			send(message);
+		}
+		catch (RuntimeException ex) {
+			// A batch is sent from the releasing or the group timeout thread, not by the callers of its requests:
+			// their replies are failed here instead of waiting for the timeout
+			if (this.replyCorrelator != null) {
+				RequestBatches.correlationIds(message)
+						.forEach((correlationId) -> this.replyCorrelator.fail(correlationId, ex));
+			}
+			throw ex;
+		}
+	}
+
+	private void send(Message<?> message) {
+		Message<?> request = message;
+		if (message.getPayload() instanceof String text) {
+			request =
+					MessageBuilder.withPayload(text.getBytes(StandardCharsets.UTF_8))
+							.copyHeaders(message.getHeaders())
+							.setHeaderIfAbsent(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.TEXT_PLAIN_VALUE)
+							.build();
+		}
+		if (!this.outputBinding.send(request)) {
+			throw new MessageDeliveryException(request, "Failed to send a request to the '" + this.bindingName + "'");
+		}
+	}
+
+}
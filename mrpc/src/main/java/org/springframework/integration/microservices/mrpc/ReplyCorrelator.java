@@ -0,0 +1,264 @@
+package org.springframework.integration.microservices.mrpc;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.messaging.Message;
+import org.springframework.scheduling.TaskScheduler;
+
+public class ReplyCorrelator implements InitializingBean, DisposableBean, MeterBinder {
+
+	public static final String CORRELATION_ID = "mrpcCorrelationId";
+
+	public static final String REPLY_TIMEOUT = "mrpcReplyTimeout";
+
+	public enum ReplyOutcome {
+
+		MATCHED, LATE, DUPLICATE, ORPHANED
+
+	}
+
+	private final Map<String, PendingReply> pendingReplies = new ConcurrentHashMap<>();
+
+	// All the instances consume all the replies, so the ids must not clash between instances
+	private final String instancePrefix = Long.toString(ThreadLocalRandom.current().nextLong() >>> 1, 36) + '-';
+
+	private final AtomicLong sequence = new AtomicLong();
+
+	private final TaskScheduler taskScheduler;
+
+	private final long tickMillis;
+
+	private final Set<Timeout>[] wheel;
+
+	private final long startNanos = System.nanoTime();
+
+	private final Map<String, ReplyOutcome> seenReplies = new ConcurrentHashMap<>();
+
+	private final Queue<SeenReply> seenRepliesOrder = new ConcurrentLinkedQueue<>();
+
+	private final AtomicInteger seenRepliesCount = new AtomicInteger();
+
+	private final Map<ReplyOutcome, LongAdder> outcomes = new EnumMap<>(ReplyOutcome.class);
+
+	private final Map<String, Timer> roundTripTimers = new ConcurrentHashMap<>();
+
+	private volatile MeterRegistry meterRegistry;
+
+	private long dedupWindowMillis = 60_000;
+
+	private int dedupCapacity = 100_000;
+
+	private volatile long currentTick;
+
+	private ScheduledFuture<?> ticker;
+
+	@SuppressWarnings("unchecked")
+	public ReplyCorrelator(TaskScheduler taskScheduler, long tickMillis, int wheelSize) {
+		this.taskScheduler = taskScheduler;
+		this.tickMillis = tickMillis;
+		this.wheel = new Set[wheelSize];
+		for (int i = 0; i < wheelSize; i++) {
+			// A set, so the timeout of a matched request is removed right away instead of staying till its deadline
+			this.wheel[i] = ConcurrentHashMap.newKeySet();
+		}
+		for (ReplyOutcome outcome : ReplyOutcome.values()) {
+			this.outcomes.put(outcome, new LongAdder());
+		}
+	}
+
+	public void setDedupWindowMillis(long dedupWindowMillis) {
+		this.dedupWindowMillis = dedupWindowMillis;
+	}
+
+	public void setDedupCapacity(int dedupCapacity) {
+		this.dedupCapacity = dedupCapacity;
+	}
+
+	@Override
+	public void afterPropertiesSet() {
+		this.ticker = this.taskScheduler.scheduleAtFixedRate(this::expire, Duration.ofMillis(this.tickMillis));
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		for (ReplyOutcome outcome : ReplyOutcome.values()) {
+			FunctionCounter.builder("mrpc.replies", this.outcomes.get(outcome), LongAdder::sum)
+					.description("The number of received replies by outcome")
+					.tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+					.register(registry);
+		}
+		Gauge.builder("mrpc.replies.pending", this, ReplyCorrelator::getPendingCount)
+				.description("The number of requests waiting for a reply")
+				.register(registry);
+		this.meterRegistry = registry;
+	}
+
+	public String nextCorrelationId() {
+		return this.instancePrefix + Long.toString(this.sequence.incrementAndGet(), 36);
+	}
+
+	public CompletableFuture<Message<?>> register(String correlationId, String destination, long timeoutMillis) {
+		long now = System.nanoTime();
+		long deadlineTick = tick(now) + Math.max(1, (timeoutMillis + this.tickMillis - 1) / this.tickMillis);
+		Timeout timeout = new Timeout(correlationId, deadlineTick);
+		PendingReply pendingReply = new PendingReply(new CompletableFuture<>(), destination, now, timeout);
+		this.pendingReplies.put(correlationId, pendingReply);
+		this.wheel[(int) (deadlineTick % this.wheel.length)].add(timeout);
+		return pendingReply.reply();
+	}
+
+	// For a request which has not been sent: there is going to be no reply to wait for
+	public void fail(String correlationId, Throwable cause) {
+		PendingReply pendingReply = this.pendingReplies.remove(correlationId);
+		if (pendingReply != null) {
+			cancelTimeout(pendingReply.timeout());
+			pendingReply.reply().completeExceptionally(cause);
+		}
+	}
+
+	public ReplyOutcome complete(Message<?> reply) {
+		Object header = reply.getHeaders().get(CORRELATION_ID);
+		String correlationId = header != null ? header.toString() : null;
+		ReplyOutcome outcome;
+		PendingReply pendingReply =
+				correlationId != null ? removePendingReply(correlationId, ReplyOutcome.DUPLICATE) : null;
+		if (pendingReply != null) {
+			cancelTimeout(pendingReply.timeout());
+			recordRoundTrip(pendingReply);
+			pendingReply.reply().complete(reply);
+			outcome = ReplyOutcome.MATCHED;
+		}
+		else if (correlationId == null || !correlationId.startsWith(this.instancePrefix)) {
+			// A reply for another instance
+			outcome = ReplyOutcome.ORPHANED;
+		}
+		else {
+			// Redelivered after a match, or arrived after the timeout
+			outcome = this.seenReplies.getOrDefault(correlationId, ReplyOutcome.LATE);
+		}
+		this.outcomes.get(outcome).increment();
+		return outcome;
+	}
+
+	public int getPendingCount() {
+		return this.pendingReplies.size();
+	}
+
+	private void recordRoundTrip(PendingReply pendingReply) {
+		MeterRegistry registry = this.meterRegistry;
+		if (registry != null) {
+			this.roundTripTimers.computeIfAbsent(pendingReply.destination(), destination ->
+							Timer.builder("mrpc.round-trip")
+									.description("The time from a request sending to its reply")
+									.tag("destination", destination)
+									.publishPercentileHistogram()
+									.register(registry))
+					.record(System.nanoTime() - pendingReply.startNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private PendingReply removePendingReply(String correlationId, ReplyOutcome nextOutcome) {
+		PendingReply[] removed = new PendingReply[1];
+		// The next outcome is recorded before the pending reply is gone, so a concurrent reply cannot miss both
+		this.pendingReplies.computeIfPresent(correlationId, (id, pendingReply) -> {
+			seen(id, nextOutcome);
+			removed[0] = pendingReply;
+			return null;
+		});
+		return removed[0];
+	}
+
+	// A next reply for this id is counted as the given outcome until evicted by the window or capacity
+	private void seen(String correlationId, ReplyOutcome outcome) {
+		if (this.seenReplies.put(correlationId, outcome) == null) {
+			this.seenRepliesOrder.offer(new SeenReply(correlationId, System.nanoTime()));
+			this.seenRepliesCount.incrementAndGet();
+		}
+	}
+
+	private void cancelTimeout(Timeout timeout) {
+		this.wheel[(int) (timeout.deadlineTick() % this.wheel.length)].remove(timeout);
+	}
+
+	private void expire() {
+		long now = tick(System.nanoTime());
+		for (long tick = this.currentTick + 1; tick <= now; tick++) {
+			Iterator<Timeout> timeouts = this.wheel[(int) (tick % this.wheel.length)].iterator();
+			while (timeouts.hasNext()) {
+				Timeout timeout = timeouts.next();
+				// Deadlines more than a wheel round ahead stay in the bucket for the next rounds
+				if (timeout.deadlineTick() <= tick) {
+					timeouts.remove();
+					PendingReply pendingReply = removePendingReply(timeout.correlationId(), ReplyOutcome.LATE);
+					if (pendingReply != null) {
+						pendingReply.reply().completeExceptionally(
+								new TimeoutException("No reply received for: " + timeout.correlationId()));
+					}
+				}
+			}
+			this.currentTick = tick;
+		}
+		evictSeenReplies();
+	}
+
+	private void evictSeenReplies() {
+		long windowStart = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(this.dedupWindowMillis);
+		SeenReply eldest;
+		while ((eldest = this.seenRepliesOrder.peek()) != null
+				&& (eldest.seenNanos() - windowStart < 0 || this.seenRepliesCount.get() > this.dedupCapacity)) {
+
+			this.seenRepliesOrder.poll();
+			this.seenRepliesCount.decrementAndGet();
+			this.seenReplies.remove(eldest.correlationId());
+		}
+	}
+
+	private long tick(long nanos) {
+		return Duration.ofNanos(nanos - this.startNanos).toMillis() / this.tickMillis;
+	}
+
+	@Override
+	public void destroy() {
+		if (this.ticker != null) {
+			this.ticker.cancel(false);
+		}
+	}
+
+	private record PendingReply(CompletableFuture<Message<?>> reply, String destination, long startNanos,
+			Timeout timeout) {
+
+	}
+
+	private record Timeout(String correlationId, long deadlineTick) {
+
+	}
+
+	private record SeenReply(String correlationId, long seenNanos) {
+
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.springframework.integration.microservices.mrpc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+public final class RequestBatches {
+
+	public static final String CORRELATION_IDS = "mrpcCorrelationIds";
+
+	private RequestBatches() {
+	}
+
+	// A batch is a JSON array of the request payloads with their correlation ids in the same order
+	public static Message<String> batch(Collection<Message<?>> requests, ObjectMapper objectMapper) {
+		List<Object> payloads = new ArrayList<>(requests.size());
+		List<String> correlationIds = new ArrayList<>(requests.size());
+		for (Message<?> request : requests) {
+			payloads.add(request.getPayload());
+			correlationIds.add(request.getHeaders().get(ReplyCorrelator.CORRELATION_ID, String.class));
+		}
+		try {
+			return MessageBuilder.withPayload(objectMapper.writeValueAsString(payloads))
+					.setHeader(CORRELATION_IDS, String.join(",", correlationIds))
+					.setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_JSON_VALUE)
+					.build();
+		}
+		catch (JsonProcessingException ex) {
+			throw new IllegalArgumentException("Cannot write a batch of requests as JSON", ex);
+		}
+	}
+
+	// The ids of all the requests in a batch, or the id of a single request
+	public static List<String> correlationIds(Message<?> request) {
+		String correlationIds = request.getHeaders().get(CORRELATION_IDS, String.class);
+		if (correlationIds != null) {
+			return Arrays.asList(StringUtils.commaDelimitedListToStringArray(correlationIds));
+		}
+		String correlationId = request.getHeaders().get(ReplyCorrelator.CORRELATION_ID, String.class);
+		return correlationId != null ? List.of(correlationId) : List.of();
+	}
+
+	public static List<Message<?>> replies(Message<?> reply, ObjectMapper objectMapper) {
+		String correlationIds = reply.getHeaders().get(CORRELATION_IDS, String.class);
+		if (correlationIds == null) {
+			return List.of(reply);
+		}
+		JsonNode results;
+		try {
+			results = objectMapper.readTree(reply.getPayload().toString());
+		}
+		catch (JsonProcessingException ex) {
+			throw new IllegalArgumentException("Cannot read a batch of replies as JSON", ex);
+		}
+		String[] ids = StringUtils.commaDelimitedListToStringArray(correlationIds);
+		if (!results.isArray() || results.size() != ids.length) {
+			throw new IllegalArgumentException(
+					"Expected a JSON array of " + ids.length + " replies for " + CORRELATION_IDS + ": " + correlationIds);
+		}
+		List<Message<?>> replies = new ArrayList<>(ids.length);
+		Iterator<JsonNode> resultIterator = results.elements();
+		for (String correlationId : ids) {
+			JsonNode result = resultIterator.next();
+			replies.add(MessageBuilder.withPayload(result.isTextual() ? result.asText() : result.toString())
+					.setHeader(ReplyCorrelator.CORRELATION_ID, correlationId)
+					.build());
+		}
+		return replies;
+	}
+
+}
@@ -1,9 +1,18 @@
 package org.springframework.integration.microservices.mrpc;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.testcontainers.containers.RabbitMQContainer;
 import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -21,6 +30,8 @@ import static org.assertj.core.api.Assertions.assertThat;
 @Testcontainers(disabledWithoutDocker = true)
 class MrpcApplicationTests {
 
+	private static final Log LOGGER = LogFactory.getLog(MrpcApplicationTests.class);
+
 	private static final RabbitMQContainer RABBITMQ = new RabbitMQContainer("rabbitmq").withExposedPorts(5672);
 
 	@BeforeAll
@@ -38,6 +49,42 @@ class MrpcApplicationTests {
 		assertThat(this.upperCaseGateway.toUpperCase("mrpc in action")).isEqualTo("MRPC IN ACTION");
 	}
 
+	@Test
+	void mrpcAsyncInAction() {
+		CompletableFuture<String> asyncReply = this.upperCaseGateway.toUpperCaseAsync("async mrpc", 10_000);
+		Mono<String> reactiveReply = this.upperCaseGateway.toUpperCaseReactive("reactive mrpc", 10_000);
+
+		StepVerifier.create(reactiveReply)
+				.expectNext("REACTIVE MRPC")
+				.verifyComplete();
+
+		assertThat(asyncReply).succeedsWithin(Duration.ofSeconds(10)).isEqualTo("ASYNC MRPC");
+	}
+
+	@Test
+	void mrpcThroughputAndLatencyByInFlightCalls() {
+		for (int inFlight : new int[] { 1, 100, 10_000 }) {
+			int requests = Math.max(1_000, inFlight * 2);
+			long start = System.nanoTime();
+			List<Long> latencies =
+					Flux.range(0, requests)
+							.flatMap((i) -> Mono.defer(() -> {
+								long requestStart = System.nanoTime();
+								return this.upperCaseGateway.toUpperCaseReactive("request " + i, 60_000)
+										.map((reply) -> System.nanoTime() - requestStart);
+							}), inFlight)
+							.sort()
+							.collectList()
+							.block(Duration.ofMinutes(5));
+			long elapsedNanos = System.nanoTime() - start;
+
+			assertThat(latencies).hasSize(requests);
+			LOGGER.info(String.format("mRPC with %d calls in flight: %d requests/s, p99 %.2f ms",
+					inFlight, requests * 1_000_000_000L / elapsedNanos,
+					latencies.get(requests * 99 / 100 - 1) / 1_000_000.0));
+		}
+	}
+
 	@TestConfiguration
 	@Import(SpelFunctionConfiguration.class)
 	public static class TransformerProcessorConfiguration {
@@ -0,0 +1,56 @@
+package org.springframework.integration.microservices.mrpc;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cloud.fn.spel.SpelFunctionConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The SpEL upper-case function turns a JSON array of strings into an upper-case JSON array as is
+@ActiveProfiles("uppercase")
+@SpringBootTest(properties = "mrpc.batch.size=10")
+@DirtiesContext
+@Testcontainers(disabledWithoutDocker = true)
+class MrpcBatchingTests {
+
+	@BeforeAll
+	static void startContainer() {
+		MrpcApplicationTests.startContainer();
+	}
+
+	@Autowired
+	MrpcApplication.UpperCaseGateway upperCaseGateway;
+
+	@Test
+	void mrpcBatchInAction() {
+		// 2 full batches and a partial one released by the batch window
+		List<CompletableFuture<String>> replies =
+				IntStream.range(0, 25)
+						.mapToObj((i) -> this.upperCaseGateway.toUpperCaseAsync("batched request " + i, 10_000))
+						.toList();
+
+		for (int i = 0; i < replies.size(); i++) {
+			assertThat(replies.get(i)).succeedsWithin(Duration.ofSeconds(10)).isEqualTo("BATCHED REQUEST " + i);
+		}
+	}
+
+	@TestConfiguration
+	@Import(SpelFunctionConfiguration.class)
+	public static class TransformerProcessorConfiguration {
+
+	}
+
+}
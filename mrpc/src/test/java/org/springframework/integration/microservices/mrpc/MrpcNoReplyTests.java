@@ -0,0 +1,94 @@
+package org.springframework.integration.microservices.mrpc;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import reactor.test.StepVerifier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.cloud.fn.spel.SpelFunctionConfiguration;
+import org.springframework.context.annotation.Import;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Nobody consumes the requests destination, so there is never going to be a reply
+@ActiveProfiles("uppercase")
+@SpringBootTest(properties = "spring.cloud.stream.bindings.requests-out-0.destination=no-function.input")
+@DirtiesContext
+@Testcontainers(disabledWithoutDocker = true)
+class MrpcNoReplyTests {
+
+	private static final Log LOGGER = LogFactory.getLog(MrpcNoReplyTests.class);
+
+	@BeforeAll
+	static void startContainer() {
+		MrpcApplicationTests.startContainer();
+	}
+
+	@Autowired
+	MrpcApplication.UpperCaseGateway upperCaseGateway;
+
+	@Autowired
+	OutputBindingSender requestSender;
+
+	@Autowired
+	StreamBridge streamBridge;
+
+	@Test
+	void perCallReplyTimeoutFailsReactiveReply() {
+		StepVerifier.create(this.upperCaseGateway.toUpperCaseReactive("no reply", 100))
+				.expectErrorSatisfies((ex) -> assertThat(ex).hasRootCauseInstanceOf(TimeoutException.class))
+				.verify(Duration.ofSeconds(10));
+	}
+
+	@Test
+	void perCallReplyTimeoutFailsAsyncReply() {
+		assertThat(this.upperCaseGateway.toUpperCaseAsync("no reply", 100))
+				.failsWithin(Duration.ofSeconds(10))
+				.withThrowableOfType(ExecutionException.class)
+				.withRootCauseInstanceOf(TimeoutException.class);
+	}
+
+	@Test
+	void outputBindingSenderVersusStreamBridge() {
+		int sends = 20_000;
+		for (int round = 0; round < 2; round++) {
+			// The first round is a warm-up
+			long start = System.nanoTime();
+			for (int i = 0; i < sends; i++) {
+				assertThat(this.streamBridge.send("requests-out-0", "request " + i)).isTrue();
+			}
+			long streamBridgeNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			for (int i = 0; i < sends; i++) {
+				this.requestSender.handleMessage(MessageBuilder.withPayload("request " + i).build());
+			}
+			long requestSenderNanos = System.nanoTime() - start;
+
+			if (round > 0) {
+				LOGGER.info(String.format("%d sends: %d ns/send with StreamBridge, %d ns/send with OutputBindingSender",
+						sends, streamBridgeNanos / sends, requestSenderNanos / sends));
+			}
+		}
+	}
+
+	@TestConfiguration
+	@Import(SpelFunctionConfiguration.class)
+	public static class TransformerProcessorConfiguration {
+
+	}
+
+}
@@ -0,0 +1,101 @@
+package org.springframework.integration.microservices.mrpc;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.integration.channel.QueueChannel;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+class OutputBindingSenderTests {
+
+	private final QueueChannel outputBinding = new QueueChannel();
+
+	@Test
+	void stringPayloadIsSentAsUtf8Bytes() {
+		outputBindingSender(this.outputBinding).handleMessage(MessageBuilder.withPayload("Grüße").build());
+
+		Message<?> request = this.outputBinding.receive(0);
+		assertThat(request).isNotNull();
+		assertThat(request.getPayload()).isEqualTo("Grüße".getBytes(StandardCharsets.UTF_8));
+		assertThat(request.getHeaders())
+				.containsEntry(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.TEXT_PLAIN_VALUE);
+	}
+
+	@Test
+	void nonStringPayloadIsSentAsIs() {
+		Message<byte[]> bytesMessage =
+				MessageBuilder.withPayload("bytes".getBytes(StandardCharsets.UTF_8))
+						.setHeader(MessageHeaders.CONTENT_TYPE, MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE)
+						.build();
+		Message<Map<String, String>> mapMessage = MessageBuilder.withPayload(Map.of("key", "value")).build();
+		OutputBindingSender outputBindingSender = outputBindingSender(this.outputBinding);
+
+		outputBindingSender.handleMessage(bytesMessage);
+		outputBindingSender.handleMessage(mapMessage);
+
+		// The conversion of a non-String payload is left to the binding
+		assertThat(this.outputBinding.receive(0)).isSameAs(bytesMessage);
+		assertThat(this.outputBinding.receive(0)).isSameAs(mapMessage);
+	}
+
+	@Test
+	void rejectedSendFails() {
+		OutputBindingSender outputBindingSender = outputBindingSender((message, timeout) -> false);
+
+		assertThatExceptionOfType(MessageDeliveryException.class)
+				.isThrownBy(() -> outputBindingSender.handleMessage(MessageBuilder.withPayload("request").build()))
+				.withMessageContaining("requests-out-0");
+	}
+
+	@Test
+	void rejectedBatchFailsPendingReplies() {
+		// No ticker is started, so only the sender can complete the replies
+		ReplyCorrelator replyCorrelator = new ReplyCorrelator(new ThreadPoolTaskScheduler(), 10, 16);
+		String firstId = replyCorrelator.nextCorrelationId();
+		String secondId = replyCorrelator.nextCorrelationId();
+		CompletableFuture<Message<?>> firstReply = replyCorrelator.register(firstId, "requests", 30_000);
+		CompletableFuture<Message<?>> secondReply = replyCorrelator.register(secondId, "requests", 30_000);
+		Message<String> batch =
+				RequestBatches.batch(List.of(request(firstId, "first"), request(secondId, "second")), new ObjectMapper());
+		OutputBindingSender outputBindingSender = outputBindingSender((message, timeout) -> false);
+		outputBindingSender.setReplyCorrelator(replyCorrelator);
+
+		assertThatExceptionOfType(MessageDeliveryException.class)
+				.isThrownBy(() -> outputBindingSender.handleMessage(batch));
+
+		assertThat(firstReply).isCompletedExceptionally();
+		assertThat(secondReply).isCompletedExceptionally();
+		assertThat(replyCorrelator.getPendingCount()).isZero();
+	}
+
+	private static Message<?> request(String correlationId, String payload) {
+		return MessageBuilder.withPayload(payload)
+				.setHeader(ReplyCorrelator.CORRELATION_ID, correlationId)
+				.build();
+	}
+
+	private static OutputBindingSender outputBindingSender(MessageChannel outputBinding) {
+		DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+		beanFactory.registerSingleton("requests-out-0", outputBinding);
+		OutputBindingSender outputBindingSender = new OutputBindingSender("requests-out-0");
+		outputBindingSender.setBeanFactory(beanFactory);
+		outputBindingSender.afterSingletonsInstantiated();
+		return outputBindingSender;
+	}
+
+}
@@ -0,0 +1,179 @@
+package org.springframework.integration.microservices.mrpc;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.awaitility.Awaitility.await;
+
+class ReplyCorrelatorTests {
+
+	private final ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+
+	private ReplyCorrelator replyCorrelator;
+
+	@BeforeEach
+	void startCorrelator() {
+		this.taskScheduler.initialize();
+		this.replyCorrelator = new ReplyCorrelator(this.taskScheduler, 5, 16);
+		this.replyCorrelator.afterPropertiesSet();
+	}
+
+	@AfterEach
+	void stopCorrelator() {
+		this.replyCorrelator.destroy();
+		this.taskScheduler.shutdown();
+	}
+
+	@Test
+	void pendingReplyTimesOut() {
+		String correlationId = this.replyCorrelator.nextCorrelationId();
+		CompletableFuture<Message<?>> reply = this.replyCorrelator.register(correlationId, "test", 20);
+
+		assertThat(reply).failsWithin(Duration.ofSeconds(10))
+				.withThrowableOfType(Exception.class)
+				.withCauseInstanceOf(TimeoutException.class);
+		assertThat(this.replyCorrelator.getPendingCount()).isZero();
+
+		assertThat(this.replyCorrelator.complete(reply(correlationId, "too late")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.LATE);
+	}
+
+	@Test
+	void timeoutLongerThanWheelRoundIsNotFiredEarly() {
+		String correlationId = this.replyCorrelator.nextCorrelationId();
+		// 16 buckets of 5 millis: the deadline is a few rounds ahead
+		CompletableFuture<Message<?>> reply = this.replyCorrelator.register(correlationId, "test", 300);
+
+		assertThat(reply).isNotDone();
+		assertThat(reply).failsWithin(Duration.ofSeconds(10))
+				.withThrowableOfType(Exception.class)
+				.withCauseInstanceOf(TimeoutException.class);
+	}
+
+	@Test
+	void failedSendRemovesPendingReply() {
+		String correlationId = this.replyCorrelator.nextCorrelationId();
+		CompletableFuture<Message<?>> reply = this.replyCorrelator.register(correlationId, "test", 30_000);
+
+		this.replyCorrelator.fail(correlationId, new MessageDeliveryException("Broker is down"));
+
+		assertThat(reply).isCompletedExceptionally();
+		assertThat(this.replyCorrelator.getPendingCount()).isZero();
+	}
+
+	@Test
+	void repliesAreClassifiedAndCounted() {
+		SimpleMeterRegistry registry = new SimpleMeterRegistry();
+		this.replyCorrelator.bindTo(registry);
+		String correlationId = this.replyCorrelator.nextCorrelationId();
+		CompletableFuture<Message<?>> reply = this.replyCorrelator.register(correlationId, "upper-case.input", 30_000);
+
+		assertThat(registry.get("mrpc.replies.pending").gauge().value()).isEqualTo(1);
+
+		assertThat(this.replyCorrelator.complete(reply(correlationId, "matched")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.MATCHED);
+		assertThat(this.replyCorrelator.complete(reply(correlationId, "redelivered")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.DUPLICATE);
+		assertThat(this.replyCorrelator.complete(reply("another-instance-1", "orphaned")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.ORPHANED);
+		assertThat(this.replyCorrelator.complete(MessageBuilder.withPayload("no correlation").build()))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.ORPHANED);
+
+		String expiredId = this.replyCorrelator.nextCorrelationId();
+		CompletableFuture<Message<?>> expiredReply = this.replyCorrelator.register(expiredId, "upper-case.input", 10);
+		await().until(expiredReply::isDone);
+
+		assertThat(this.replyCorrelator.complete(reply(expiredId, "late")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.LATE);
+
+		assertThat(reply).isCompletedWithValueMatching((message) -> "matched".equals(message.getPayload()));
+		assertThat(registry.get("mrpc.replies").tag("outcome", "matched").functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get("mrpc.replies").tag("outcome", "duplicate").functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get("mrpc.replies").tag("outcome", "orphaned").functionCounter().count()).isEqualTo(2);
+		assertThat(registry.get("mrpc.replies").tag("outcome", "late").functionCounter().count()).isEqualTo(1);
+		assertThat(registry.get("mrpc.replies.pending").gauge().value()).isZero();
+		assertThat(registry.get("mrpc.round-trip").tag("destination", "upper-case.input").timer().count())
+				.isEqualTo(1);
+	}
+
+	@Test
+	void concurrentRedeliveryIsCountedAsDuplicate() {
+		List<String> correlationIds =
+				IntStream.range(0, 1_000)
+						.mapToObj((i) -> this.replyCorrelator.nextCorrelationId())
+						.toList();
+		correlationIds.forEach((correlationId) -> this.replyCorrelator.register(correlationId, "test", 30_000));
+
+		// Every reply is delivered twice at the same time
+		List<ReplyCorrelator.ReplyOutcome> outcomes =
+				correlationIds.parallelStream()
+						.flatMap((correlationId) -> IntStream.range(0, 2)
+								.parallel()
+								.mapToObj((i) -> this.replyCorrelator.complete(reply(correlationId, "reply " + i))))
+						.toList();
+
+		assertThat(outcomes)
+				.filteredOn(ReplyCorrelator.ReplyOutcome.MATCHED::equals).hasSize(correlationIds.size());
+		assertThat(outcomes)
+				.filteredOn(ReplyCorrelator.ReplyOutcome.DUPLICATE::equals).hasSize(correlationIds.size());
+	}
+
+	@Test
+	void seenRepliesAreEvictedAfterWindow() {
+		this.replyCorrelator.setDedupWindowMillis(50);
+		String correlationId = this.replyCorrelator.nextCorrelationId();
+		this.replyCorrelator.register(correlationId, "test", 30_000);
+		this.replyCorrelator.complete(reply(correlationId, "matched"));
+
+		assertThat(this.replyCorrelator.complete(reply(correlationId, "redelivered")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.DUPLICATE);
+
+		// Not remembered after the window: cannot be told from a late reply any more
+		await().until(() ->
+				this.replyCorrelator.complete(reply(correlationId, "redelivered")) == ReplyCorrelator.ReplyOutcome.LATE);
+	}
+
+	@Test
+	void seenRepliesAreEvictedOverCapacity() {
+		this.replyCorrelator.setDedupCapacity(2);
+		List<String> correlationIds =
+				IntStream.range(0, 3)
+						.mapToObj((i) -> this.replyCorrelator.nextCorrelationId())
+						.toList();
+		for (String correlationId : correlationIds) {
+			this.replyCorrelator.register(correlationId, "test", 30_000);
+			this.replyCorrelator.complete(reply(correlationId, "matched"));
+		}
+
+		// The eldest id is evicted on the next tick
+		await().until(() ->
+				this.replyCorrelator.complete(reply(correlationIds.get(0), "redelivered"))
+						== ReplyCorrelator.ReplyOutcome.LATE);
+
+		assertThat(this.replyCorrelator.complete(reply(correlationIds.get(1), "redelivered")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.DUPLICATE);
+		assertThat(this.replyCorrelator.complete(reply(correlationIds.get(2), "redelivered")))
+				.isEqualTo(ReplyCorrelator.ReplyOutcome.DUPLICATE);
+	}
+
+	private static Message<String> reply(String correlationId, String payload) {
+		return MessageBuilder.withPayload(payload)
+				.setHeader(ReplyCorrelator.CORRELATION_ID, correlationId)
+				.build();
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import reactor.core.publisher.Flux;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.core.codec.StringDecoder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.MediaType;
+
+public final class BatchRecordDecoder {
+
+	private static final ResolvableType STRING_TYPE = ResolvableType.forClass(String.class);
+
+	private static final StringDecoder LINES_DECODER = StringDecoder.allMimeTypes();
+
+	private static final StringDecoder XML_ELEMENTS_DECODER =
+			StringDecoder.allMimeTypes(List.of("</card-transaction>"), false);
+
+	private static final Pattern XML_ELEMENT_START = Pattern.compile("<card-transaction[\\s>/]");
+
+	private BatchRecordDecoder() {
+	}
+
+	// Records are framed as buffers arrive, so the body is never aggregated as a whole
+	public static Flux<String> records(Flux<DataBuffer> body, MediaType contentType) {
+		if (MediaType.APPLICATION_XML.isCompatibleWith(contentType)) {
+			return XML_ELEMENTS_DECODER.decode(body, STRING_TYPE, contentType, Map.of())
+					.mapNotNull(BatchRecordDecoder::xmlElement);
+		}
+		return LINES_DECODER.decode(body, STRING_TYPE, contentType, Map.of())
+				.filter((line) -> !line.isBlank());
+	}
+
+	public static String recordContentType(MediaType contentType) {
+		if (MediaType.APPLICATION_NDJSON.isCompatibleWith(contentType)) {
+			return MediaType.APPLICATION_JSON_VALUE;
+		}
+		return contentType.getType() + '/' + contentType.getSubtype();
+	}
+
+	private static String xmlElement(String chunk) {
+		// A chunk may start with an XML declaration or a wrapping element
+		Matcher elementStart = XML_ELEMENT_START.matcher(chunk);
+		return elementStart.find() ? chunk.substring(elementStart.start()) : null;
+	}
+
+}
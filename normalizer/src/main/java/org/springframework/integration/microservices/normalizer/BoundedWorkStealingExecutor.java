@@ -0,0 +1,103 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.task.TaskExecutor;
+
+public class BoundedWorkStealingExecutor implements TaskExecutor, DisposableBean {
+
+	private final ForkJoinPool forkJoinPool;
+
+	private final Semaphore inFlight;
+
+	public BoundedWorkStealingExecutor(String threadNamePrefix, int parallelism, int maxInFlight) {
+		// The async mode keeps submitted tasks FIFO, idle workers still steal from busy ones
+		this.forkJoinPool =
+				new ForkJoinPool(parallelism,
+						pool -> {
+							ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+							thread.setName(threadNamePrefix + thread.getPoolIndex());
+							return thread;
+						},
+						null, true);
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	@Override
+	public void execute(Runnable task) {
+		try {
+			// The submitter is blocked when too many tasks are in flight: there is no unbounded queue
+			this.inFlight.acquire();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new RejectedExecutionException("Interrupted while waiting for an executor permit", ex);
+		}
+		try {
+			this.forkJoinPool.execute(() -> {
+				try {
+					task.run();
+				}
+				finally {
+					this.inFlight.release();
+				}
+			});
+		}
+		catch (RejectedExecutionException ex) {
+			this.inFlight.release();
+			throw ex;
+		}
+	}
+
+	// Blocking I/O in a task should go through here, so the pool can add a compensating worker meanwhile
+	public static <T> T managedBlock(Supplier<T> blockingOperation) {
+		BlockingOperation<T> blocker = new BlockingOperation<>(blockingOperation);
+		try {
+			ForkJoinPool.managedBlock(blocker);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while blocked", ex);
+		}
+		return blocker.result;
+	}
+
+	@Override
+	public void destroy() throws InterruptedException {
+		this.forkJoinPool.shutdown();
+		this.forkJoinPool.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	private static final class BlockingOperation<T> implements ForkJoinPool.ManagedBlocker {
+
+		private final Supplier<T> operation;
+
+		private T result;
+
+		private boolean done;
+
+		BlockingOperation(Supplier<T> operation) {
+			this.operation = operation;
+		}
+
+		@Override
+		public boolean block() {
+			this.result = this.operation.get();
+			this.done = true;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return this.done;
+		}
+
+	}
+
+}
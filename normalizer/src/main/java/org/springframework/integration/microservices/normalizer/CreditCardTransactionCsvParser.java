@@ -0,0 +1,73 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+public final class CreditCardTransactionCsvParser {
+
+	private static final int FIELDS_COUNT = 5;
+
+	private CreditCardTransactionCsvParser() {
+	}
+
+	// Fields are scanned in place: no String[] and no substrings except for the text fields themselves
+	public static CreditCardTransaction parse(CharSequence record) {
+		int[] fieldEnds = new int[FIELDS_COUNT];
+		int field = 0;
+		int length = record.length();
+		for (int index = 0; index < length && field < FIELDS_COUNT; index++) {
+			if (record.charAt(index) == ',') {
+				fieldEnds[field++] = index;
+			}
+		}
+		if (field < FIELDS_COUNT - 1) {
+			throw new IllegalArgumentException("Expected " + FIELDS_COUNT + " CSV fields in record: " + record);
+		}
+		// Any fields after the merchant are ignored, as with the comma delimited list
+		if (field == FIELDS_COUNT - 1) {
+			fieldEnds[FIELDS_COUNT - 1] = length;
+		}
+
+		CreditCardTransaction cardTransaction = new CreditCardTransaction();
+		cardTransaction.setId(Long.parseLong(record, 0, fieldEnds[0], 10));
+		cardTransaction.setCardNumber(text(record, fieldEnds[0] + 1, fieldEnds[1]));
+		cardTransaction.setTransactionDate(new Date(Long.parseLong(record, fieldEnds[1] + 1, fieldEnds[2], 10)));
+		cardTransaction.setAmount(decimal(record, fieldEnds[2] + 1, fieldEnds[3]));
+		cardTransaction.setMerchant(text(record, fieldEnds[3] + 1, fieldEnds[4]));
+		return cardTransaction;
+	}
+
+	private static String text(CharSequence record, int start, int end) {
+		return record.subSequence(start, end).toString();
+	}
+
+	private static BigDecimal decimal(CharSequence record, int start, int end) {
+		boolean negative = start < end && record.charAt(start) == '-';
+		int index = negative || (start < end && record.charAt(start) == '+') ? start + 1 : start;
+		long unscaled = 0;
+		int scale = -1;
+		int digits = 0;
+		for (; index < end; index++) {
+			char c = record.charAt(index);
+			if (c == '.' && scale < 0) {
+				scale = 0;
+			}
+			else if (c >= '0' && c <= '9' && digits < 18) {
+				unscaled = unscaled * 10 + (c - '0');
+				digits++;
+				if (scale >= 0) {
+					scale++;
+				}
+			}
+			else {
+				// Exponents, too many digits etc. are left to the BigDecimal parser
+				return new BigDecimal(record.subSequence(start, end).toString());
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("Not a decimal: " + record.subSequence(start, end));
+		}
+		return BigDecimal.valueOf(negative ? -unscaled : unscaled, Math.max(scale, 0));
+	}
+
+}
@@ -0,0 +1,112 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.transform.Source;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.MediaType;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+import org.springframework.xml.transform.StringSource;
+
+public class CreditCardTransactionFormats {
+
+	private final ObjectMapper objectMapper;
+
+	private final Jaxb2Marshaller jaxb2Marshaller;
+
+	private final CreditCardTransactionJsonTranscoder jsonTranscoder;
+
+	private final PooledJaxbUnmarshaller pooledUnmarshaller;
+
+	public CreditCardTransactionFormats(ObjectMapper objectMapper, Jaxb2Marshaller jaxb2Marshaller,
+			boolean directTranscoding, int unmarshallerPoolSize) {
+
+		this.objectMapper = objectMapper;
+		this.jaxb2Marshaller = jaxb2Marshaller;
+		this.jsonTranscoder = directTranscoding ? new CreditCardTransactionJsonTranscoder(objectMapper) : null;
+		this.pooledUnmarshaller =
+				unmarshallerPoolSize > 0 ? new PooledJaxbUnmarshaller(jaxb2Marshaller, unmarshallerPoolSize) : null;
+	}
+
+	public List<NormalizerFormat> getFormats() {
+		return List.of(
+				NormalizerFormat.of("xml", MediaType.APPLICATION_XML, this::xmlToJson),
+				NormalizerFormat.of("csv", new MediaType("text", "csv"), this::csvToJson),
+				NormalizerFormat.of("properties", new MediaType("application", "properties"), this::propertiesToJson),
+				NormalizerFormat.of("json", MediaType.APPLICATION_JSON, this::jsonToJson));
+	}
+
+	private Object jsonToJson(Object payload) {
+		try {
+			return this.objectMapper.readValue(text(payload), CreditCardTransaction.class);
+		}
+		catch (JsonProcessingException ex) {
+			throw new IllegalArgumentException("Cannot read a JSON card transaction", ex);
+		}
+	}
+
+	private Object xmlToJson(Object payload) {
+		if (this.jsonTranscoder != null) {
+			return this.jsonTranscoder.xmlToJson(text(payload));
+		}
+		if (this.pooledUnmarshaller != null) {
+			return this.pooledUnmarshaller.transform(payload instanceof byte[] ? payload : text(payload));
+		}
+		return this.jaxb2Marshaller.unmarshal(payload instanceof Source source ? source : new StringSource(text(payload)));
+	}
+
+	private Object csvToJson(Object payload) {
+		if (this.jsonTranscoder != null) {
+			return this.jsonTranscoder.csvToJson(text(payload));
+		}
+		return CreditCardTransactionCsvParser.parse(text(payload));
+	}
+
+	private Object propertiesToJson(Object payload) {
+		Properties properties = (Properties) payload;
+		if (this.jsonTranscoder != null) {
+			return this.jsonTranscoder.propertiesToJson(properties);
+		}
+		CreditCardTransaction cardTransaction = new CreditCardTransaction();
+		cardTransaction.setId(Long.parseLong(properties.getProperty("card-transaction.id")));
+		cardTransaction.setCardNumber(properties.getProperty("card-transaction.card-number"));
+		cardTransaction.setTransactionDate(new Date(Long.parseLong(properties.getProperty("card-transaction.date"))));
+		cardTransaction.setAmount(new BigDecimal(properties.getProperty("card-transaction.amount")));
+		cardTransaction.setMerchant(properties.getProperty("card-transaction.merchant"));
+		try {
+			return this.objectMapper.writeValueAsString(cardTransaction);
+		}
+		catch (JsonProcessingException ex) {
+			throw new IllegalStateException("Cannot write a card transaction as JSON", ex);
+		}
+	}
+
+	// The text formats accept the payload types the inbound endpoints may produce, not only a String
+	private static String text(Object payload) {
+		if (payload instanceof String string) {
+			return string;
+		}
+		if (payload instanceof byte[] bytes) {
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+		if (payload instanceof DataBuffer dataBuffer) {
+			try {
+				return dataBuffer.toString(StandardCharsets.UTF_8);
+			}
+			finally {
+				DataBufferUtils.release(dataBuffer);
+			}
+		}
+		throw new IllegalArgumentException("Unsupported payload type for a text record: " + payload.getClass());
+	}
+
+}
@@ -0,0 +1,274 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.text.DateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.RawValue;
+import jakarta.xml.bind.DatatypeConverter;
+
+public class CreditCardTransactionJsonTranscoder {
+
+	private static final List<String> FIELDS = List.of("id", "cardNumber", "transactionDate", "amount", "merchant");
+
+	private static final int ID = 0;
+
+	private static final int TRANSACTION_DATE = 2;
+
+	private static final int AMOUNT = 3;
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+
+	static {
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+	}
+
+	private final ObjectWriter objectWriter;
+
+	private final boolean datesAsTimestamps;
+
+	private final ThreadLocal<DateFormat> dateFormat;
+
+	private final ThreadLocal<CharArrayWriter> outputBuffer = ThreadLocal.withInitial(() -> new CharArrayWriter(512));
+
+	private final ThreadLocal<char[]> inputBuffer = ThreadLocal.withInitial(() -> new char[256]);
+
+	public CreditCardTransactionJsonTranscoder(ObjectMapper objectMapper) {
+		// Compact output: the result is also written as NDJSON lines
+		this.objectWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+		this.datesAsTimestamps = objectMapper.isEnabled(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+		DateFormat mapperDateFormat = objectMapper.getDateFormat();
+		this.dateFormat = ThreadLocal.withInitial(() -> (DateFormat) mapperDateFormat.clone());
+	}
+
+	public RawValue csvToJson(String record) {
+		int length = record.length();
+		char[] chars = this.inputBuffer.get();
+		if (chars.length < length) {
+			chars = new char[Math.max(length, chars.length * 2)];
+			this.inputBuffer.set(chars);
+		}
+		record.getChars(0, length, chars, 0);
+
+		int[] fieldStarts = new int[FIELDS.size() + 1];
+		int field = 1;
+		for (int index = 0; index < length && field <= FIELDS.size(); index++) {
+			if (chars[index] == ',') {
+				fieldStarts[field++] = index + 1;
+			}
+		}
+		if (field < FIELDS.size()) {
+			throw new IllegalArgumentException("Expected " + FIELDS.size() + " CSV fields in record: " + record);
+		}
+		// Any fields after the merchant are ignored, as by the CreditCardTransactionCsvParser
+		if (field == FIELDS.size()) {
+			fieldStarts[FIELDS.size()] = length + 1;
+		}
+
+		char[] csv = chars;
+		return new RawValue(write((generator) -> {
+			generator.writeStartObject();
+			for (int i = 0; i < FIELDS.size(); i++) {
+				generator.writeFieldName(FIELDS.get(i));
+				writeValue(generator, i, csv, fieldStarts[i], fieldStarts[i + 1] - 1 - fieldStarts[i]);
+			}
+			generator.writeEndObject();
+		}));
+	}
+
+	public RawValue xmlToJson(String xml) {
+		return new RawValue(write((generator) -> {
+			try {
+				XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(xml));
+				try {
+					writeXml(reader, generator);
+				}
+				finally {
+					reader.close();
+				}
+			}
+			catch (XMLStreamException ex) {
+				throw new IllegalArgumentException("Cannot transcode XML card transaction", ex);
+			}
+		}));
+	}
+
+	public String propertiesToJson(Properties properties) {
+		return write((generator) -> {
+			generator.writeStartObject();
+			generator.writeFieldName("id");
+			writeNumber(generator, properties.getProperty("card-transaction.id"), false);
+			generator.writeStringField("cardNumber", properties.getProperty("card-transaction.card-number"));
+			generator.writeFieldName("transactionDate");
+			writeDate(generator, Long.parseLong(properties.getProperty("card-transaction.date")));
+			generator.writeFieldName("amount");
+			writeNumber(generator, properties.getProperty("card-transaction.amount"), true);
+			generator.writeStringField("merchant", properties.getProperty("card-transaction.merchant"));
+			generator.writeEndObject();
+		});
+	}
+
+	private void writeXml(XMLStreamReader reader, JsonGenerator generator) throws XMLStreamException, IOException {
+		generator.writeStartObject();
+		int seenFields = 0;
+		reader.nextTag();
+		while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			int field = FIELDS.indexOf(reader.getLocalName());
+			if (field < 0) {
+				skipElement(reader);
+				continue;
+			}
+			generator.writeFieldName(FIELDS.get(field));
+			if (reader.next() == XMLStreamConstants.CHARACTERS) {
+				// The text is written straight from the StAX parser buffer
+				writeValue(generator, field, reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+				reader.nextTag();
+			}
+			else {
+				generator.writeNull();
+			}
+			seenFields |= 1 << field;
+		}
+		for (int field = 0; field < FIELDS.size(); field++) {
+			if ((seenFields & (1 << field)) == 0) {
+				generator.writeNullField(FIELDS.get(field));
+			}
+		}
+		generator.writeEndObject();
+	}
+
+	private void writeValue(JsonGenerator generator, int field, char[] chars, int offset, int length)
+			throws IOException {
+
+		switch (field) {
+			case ID -> writeNumber(generator, chars, offset, length, false);
+			case AMOUNT -> writeNumber(generator, chars, offset, length, true);
+			case TRANSACTION_DATE -> writeDate(generator, chars, offset, length);
+			default -> generator.writeString(chars, offset, length);
+		}
+	}
+
+	private void writeDate(JsonGenerator generator, char[] chars, int offset, int length) throws IOException {
+		boolean epochMillis = isInteger(chars, offset, length);
+		if (epochMillis && this.datesAsTimestamps) {
+			generator.writeNumber(chars, offset, length);
+			return;
+		}
+		writeDate(generator,
+				epochMillis
+						? Long.parseLong(new String(chars, offset, length))
+						: DatatypeConverter.parseDateTime(new String(chars, offset, length)).getTimeInMillis());
+	}
+
+	private void writeDate(JsonGenerator generator, long epochMillis) throws IOException {
+		if (this.datesAsTimestamps) {
+			generator.writeNumber(epochMillis);
+		}
+		else {
+			generator.writeString(this.dateFormat.get().format(new Date(epochMillis)));
+		}
+	}
+
+	private String write(JsonWriting writing) {
+		// The generator buffer grows once per thread, but every record is still copied into its own String
+		CharArrayWriter buffer = this.outputBuffer.get();
+		buffer.reset();
+		try (JsonGenerator generator = this.objectWriter.createGenerator(buffer)) {
+			writing.write(generator);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return buffer.toString();
+	}
+
+	private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+		int depth = 1;
+		while (depth > 0) {
+			int event = reader.next();
+			if (event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+
+	private static boolean isInteger(char[] chars, int offset, int length) {
+		int end = offset + length;
+		int index = length > 0 && chars[offset] == '-' ? offset + 1 : offset;
+		int digitsStart = index;
+		while (index < end && chars[index] >= '0' && chars[index] <= '9') {
+			index++;
+		}
+		return index > digitsStart && index == end;
+	}
+
+	// Only numbers which are valid JSON as is are copied without parsing
+	private static boolean isJsonNumber(char[] chars, int offset, int length, boolean fraction) {
+		int end = offset + length;
+		int index = length > 0 && chars[offset] == '-' ? offset + 1 : offset;
+		int digitsStart = index;
+		while (index < end && chars[index] >= '0' && chars[index] <= '9') {
+			index++;
+		}
+		int digits = index - digitsStart;
+		if (digits == 0 || (digits > 1 && chars[digitsStart] == '0')) {
+			return false;
+		}
+		if (fraction && index < end && chars[index] == '.') {
+			int fractionStart = ++index;
+			while (index < end && chars[index] >= '0' && chars[index] <= '9') {
+				index++;
+			}
+			if (index == fractionStart) {
+				return false;
+			}
+		}
+		return index == end;
+	}
+
+	private static void writeNumber(JsonGenerator generator, char[] chars, int offset, int length, boolean fraction)
+			throws IOException {
+
+		if (isJsonNumber(chars, offset, length, fraction)) {
+			generator.writeNumber(chars, offset, length);
+		}
+		else if (fraction) {
+			generator.writeNumber(new BigDecimal(chars, offset, length));
+		}
+		else {
+			generator.writeNumber(Long.parseLong(new String(chars, offset, length)));
+		}
+	}
+
+	private static void writeNumber(JsonGenerator generator, String value, boolean fraction) throws IOException {
+		writeNumber(generator, value.toCharArray(), 0, value.length(), fraction);
+	}
+
+	@FunctionalInterface
+	private interface JsonWriting {
+
+		void write(JsonGenerator generator) throws IOException;
+
+	}
+
+}
@@ -0,0 +1,262 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.NoSuchElementException;
+
+import org.springframework.integration.metadata.MetadataStore;
+import org.springframework.integration.util.CloseableIterator;
+
+public final class FileRecordIterator implements CloseableIterator<String> {
+
+	private static final byte[] NEW_LINE = { '\n' };
+
+	private static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+	private final FileChannel fileChannel;
+
+	private final long fileSize;
+
+	private final byte[] recordStart;
+
+	private final byte[] recordEnd;
+
+	private final MetadataStore checkpointStore;
+
+	private final String checkpointKey;
+
+	private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+	private int checkpointInterval = 1000;
+
+	private MappedByteBuffer chunk;
+
+	private long chunkStart;
+
+	private long position;
+
+	private long recordsSinceCheckpoint;
+
+	private String nextRecord;
+
+	private FileRecordIterator(File file, byte[] recordStart, byte[] recordEnd, MetadataStore checkpointStore) {
+		this.recordStart = recordStart;
+		this.recordEnd = recordEnd;
+		this.checkpointStore = checkpointStore;
+		this.checkpointKey = "normalizer.checkpoint:" + file.getAbsolutePath() + ':' + file.lastModified();
+		try {
+			this.fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			this.fileSize = this.fileChannel.size();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Cannot open a file for records: " + file, ex);
+		}
+		String checkpoint = checkpointStore.get(this.checkpointKey);
+		this.position = checkpoint != null ? Long.parseLong(checkpoint) : 0;
+	}
+
+	public static FileRecordIterator lines(File file, MetadataStore checkpointStore) {
+		return new FileRecordIterator(file, null, NEW_LINE, checkpointStore);
+	}
+
+	public static FileRecordIterator elements(File file, String elementName, MetadataStore checkpointStore) {
+		return new FileRecordIterator(file,
+				('<' + elementName).getBytes(StandardCharsets.UTF_8),
+				("</" + elementName + '>').getBytes(StandardCharsets.UTF_8),
+				checkpointStore);
+	}
+
+	public FileRecordIterator chunkSize(int chunkSize) {
+		this.chunkSize = chunkSize;
+		return this;
+	}
+
+	public FileRecordIterator checkpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+		return this;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.nextRecord == null) {
+			// The previous record has been processed downstream when the next one is requested
+			if (this.recordsSinceCheckpoint >= this.checkpointInterval) {
+				checkpoint();
+			}
+			this.nextRecord = readRecord();
+			if (this.nextRecord == null) {
+				complete();
+				close();
+			}
+		}
+		return this.nextRecord != null;
+	}
+
+	@Override
+	public String next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		String record = this.nextRecord;
+		this.nextRecord = null;
+		this.recordsSinceCheckpoint++;
+		return record;
+	}
+
+	private String readRecord() {
+		while (this.position < this.fileSize) {
+			long start = this.position;
+			if (this.recordStart != null) {
+				start = findElementStart(this.position);
+				if (start < 0) {
+					this.position = this.fileSize;
+					return null;
+				}
+			}
+			long end = find(this.recordEnd, start, start);
+			if (end < 0) {
+				if (this.recordStart != null) {
+					// An incomplete element at the end of file
+					this.position = this.fileSize;
+					return null;
+				}
+				end = this.fileSize;
+				this.position = this.fileSize;
+			}
+			else if (this.recordStart != null) {
+				end += this.recordEnd.length;
+				this.position = end;
+			}
+			else {
+				this.position = end + 1;
+			}
+			String record = decode(start, end);
+			if (!record.isBlank()) {
+				return record;
+			}
+		}
+		return null;
+	}
+
+	private long findElementStart(long from) {
+		long start = from;
+		while (true) {
+			start = find(this.recordStart, start, -1, 1);
+			if (start < 0 || isNameBoundary(this.chunk.get((int) (start - this.chunkStart) + this.recordStart.length))) {
+				return start;
+			}
+			// A longer element name with the same prefix, e.g. a wrapping <card-transactions>
+			start++;
+		}
+	}
+
+	private static boolean isNameBoundary(byte nextByte) {
+		return nextByte == '>' || nextByte == '/' || nextByte == ' ' || nextByte == '\t' || nextByte == '\r'
+				|| nextByte == '\n';
+	}
+
+	private long find(byte[] pattern, long from, long recordStart) {
+		return find(pattern, from, recordStart, 0);
+	}
+
+	// A negative recordStart means the search is not within a record, so nothing before 'from' has to stay mapped
+	private long find(byte[] pattern, long from, long recordStart, int lookahead) {
+		long mapFrom = recordStart >= 0 ? recordStart : from;
+		while (true) {
+			if (this.chunk == null || from < this.chunkStart) {
+				map(mapFrom);
+			}
+			// The lookahead bytes after the pattern must be in the same chunk as well
+			int limit = this.chunk.limit() - pattern.length - lookahead;
+			for (int index = (int) (from - this.chunkStart); index <= limit; index++) {
+				if (matches(pattern, index)) {
+					return this.chunkStart + index;
+				}
+			}
+			if (this.chunkStart + this.chunk.limit() >= this.fileSize) {
+				return -1;
+			}
+			if (recordStart < 0) {
+				from = Math.max(from, this.chunkStart + limit + 1);
+				mapFrom = from;
+			}
+			else if (this.chunkStart == recordStart) {
+				throw new IllegalStateException(
+						"A record at offset " + recordStart + " is larger than the chunk size of " + this.chunkSize);
+			}
+			// Re-map from the record start, so the whole record is in a single chunk
+			map(mapFrom);
+		}
+	}
+
+	private boolean matches(byte[] pattern, int index) {
+		for (int i = 0; i < pattern.length; i++) {
+			if (this.chunk.get(index + i) != pattern[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private String decode(long start, long end) {
+		byte[] bytes = new byte[(int) (end - start)];
+		this.chunk.get((int) (start - this.chunkStart), bytes);
+		int length = bytes.length;
+		if (length > 0 && bytes[length - 1] == '\r') {
+			length--;
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	private void map(long start) {
+		try {
+			this.chunkStart = start;
+			this.chunk =
+					this.fileChannel.map(FileChannel.MapMode.READ_ONLY, start,
+							Math.min(this.chunkSize, this.fileSize - start));
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Cannot map a file chunk at offset " + start, ex);
+		}
+	}
+
+	private void checkpoint() {
+		this.checkpointStore.put(this.checkpointKey, String.valueOf(this.position));
+		flushCheckpoints();
+		this.recordsSinceCheckpoint = 0;
+	}
+
+	private void complete() {
+		// A fully processed file needs no checkpoint, so the store does not grow with every file ever seen
+		this.checkpointStore.remove(this.checkpointKey);
+		flushCheckpoints();
+	}
+
+	private void flushCheckpoints() {
+		if (this.checkpointStore instanceof Flushable flushable) {
+			try {
+				flushable.flush();
+			}
+			catch (IOException ex) {
+				throw new UncheckedIOException("Cannot flush a checkpoint", ex);
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			this.fileChannel.close();
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+
+}
@@ -3,38 +3,55 @@ package org.springframework.integration.microservices.normalizer;
 import java.io.File;
 import java.io.IOException;
 import java.io.UncheckedIOException;
-import java.math.BigDecimal;
-import java.util.Date;
 import java.util.Map;
 import java.util.Properties;
+import java.util.stream.Stream;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.RawValue;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
-import org.springframework.beans.factory.BeanClassLoaderAware;
-import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.core.ResolvableType;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.core.io.support.PropertiesLoaderUtils;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.integration.annotation.Gateway;
+import org.springframework.integration.annotation.MessagingGateway;
+import org.springframework.integration.channel.QueueChannel;
 import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlowAdapter;
 import org.springframework.integration.dsl.IntegrationFlowDefinition;
 import org.springframework.integration.dsl.Transformers;
 import org.springframework.integration.file.FileHeaders;
+import org.springframework.integration.file.FileReadingMessageSource;
 import org.springframework.integration.file.dsl.Files;
+import org.springframework.integration.file.filters.AcceptOnceFileListFilter;
+import org.springframework.integration.file.filters.ChainFileListFilter;
+import org.springframework.integration.file.filters.LastModifiedFileListFilter;
+import org.springframework.integration.file.support.FileExistsMode;
 import org.springframework.integration.handler.LoggingHandler;
 import org.springframework.integration.http.support.DefaultHttpHeaderMapper;
+import org.springframework.integration.metadata.MetadataStore;
+import org.springframework.integration.metadata.PropertiesPersistingMetadataStore;
 import org.springframework.integration.support.json.Jackson2JsonObjectMapper;
 import org.springframework.integration.webflux.dsl.WebFlux;
-import org.springframework.integration.xml.transformer.UnmarshallingTransformer;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.handler.annotation.Header;
+import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
-import org.springframework.util.StringUtils;
 
 @SpringBootApplication
 public class NormalizerApplication {
@@ -57,17 +74,115 @@ public class NormalizerApplication {
 	}
 
 	@Bean
-	IntegrationFlow normalizerFilesInput(@Value("cardTransactionInput") File inputDir) {
-		return IntegrationFlow.from(Files.inboundAdapter(inputDir),
-						endpoint -> endpoint.poller(poller -> poller.fixedDelay(1000, 1000)))
-				.<File, Properties>transform(payload -> {
-					try {
-						return PropertiesLoaderUtils.loadProperties(new FileSystemResource(payload));
-					}
-					catch (IOException ex) {
-						throw new UncheckedIOException(ex);
-					}
+	IntegrationFlow normalizerBatchRest(RecordNormalizer recordNormalizer, ObjectMapper objectMapper,
+			NormalizerFormatRegistry normalizerFormatRegistry) {
+
+		DefaultHttpHeaderMapper headerMapper = DefaultHttpHeaderMapper.outboundMapper();
+		headerMapper.setExcludedOutboundStandardRequestHeaderNames(MessageHeaders.CONTENT_TYPE);
+
+		ObjectWriter ndjsonWriter = objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+
+		return IntegrationFlow.from(WebFlux.inboundGateway("/normalize/batch")
+						// The response status is committed with the first line, so a request without a normalizer
+						// format for its records is rejected with 415 by the mapping, before the flow is called
+						.requestMapping(mapping -> mapping
+								.methods(HttpMethod.POST)
+								.consumes(batchContentTypes(normalizerFormatRegistry))
+								.produces(MediaType.APPLICATION_NDJSON_VALUE))
+						.requestPayloadType(ResolvableType.forClassWithGenerics(Flux.class, DataBuffer.class))
+						.headerMapper(headerMapper))
+				.<Flux<DataBuffer>>handle((body, headers) -> {
+					MediaType contentType = MediaType.parseMediaType(headers.get(MessageHeaders.CONTENT_TYPE).toString());
+					String recordContentType = BatchRecordDecoder.recordContentType(contentType);
+					// Records are normalized one by one on the response demand.
+					// The gateway call blocks, so it is moved off the Netty event loop
+					return BatchRecordDecoder.records(body, contentType)
+							.index()
+							.publishOn(Schedulers.boundedElastic())
+							.map(record -> normalizeRecord(recordNormalizer, record.getT1(), record.getT2(),
+									recordContentType, ndjsonWriter));
 				})
+				.get();
+	}
+
+	// The record content types of all the formats, and NDJSON for the JSON records
+	private static String[] batchContentTypes(NormalizerFormatRegistry normalizerFormatRegistry) {
+		Stream<String> recordContentTypes =
+				normalizerFormatRegistry.getFormats()
+						.stream()
+						.flatMap((format) -> format.getContentTypes().stream())
+						.map((contentType) -> contentType.getType() + '/' + contentType.getSubtype());
+		Stream<String> ndjson =
+				normalizerFormatRegistry.supports(MediaType.APPLICATION_JSON_VALUE)
+						? Stream.of(MediaType.APPLICATION_NDJSON_VALUE)
+						: Stream.empty();
+		return Stream.concat(recordContentTypes, ndjson)
+				.distinct()
+				.toArray(String[]::new);
+	}
+
+	// A bad record is reported in its own line instead of cutting the already streamed response short
+	private static RawValue normalizeRecord(RecordNormalizer recordNormalizer, long index, String record,
+			String recordContentType, ObjectWriter ndjsonWriter) {
+
+		Object result;
+		try {
+			result = recordNormalizer.normalize(record, recordContentType);
+		}
+		catch (RuntimeException ex) {
+			result = new RecordError(index, NestedExceptionUtils.getMostSpecificCause(ex).toString());
+		}
+		return ndjsonLine(result, ndjsonWriter);
+	}
+
+	private static RawValue ndjsonLine(Object result, ObjectWriter ndjsonWriter) {
+		if (result instanceof RawValue rawValue) {
+			return rawValue;
+		}
+		try {
+			return new RawValue(ndjsonWriter.writeValueAsString(result));
+		}
+		catch (JsonProcessingException ex) {
+			throw new IllegalStateException("Cannot write a normalized record as JSON", ex);
+		}
+	}
+
+	@Bean
+	BoundedWorkStealingExecutor normalizerFilesExecutor(
+			@Value("${normalizer.files.parallelism:0}") int parallelism,
+			@Value("${normalizer.files.max-in-flight:1000}") int maxInFlight) {
+
+		return new BoundedWorkStealingExecutor("normalizer-files-",
+				parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors(), maxInFlight);
+	}
+
+	@Bean
+	IntegrationFlow normalizerFilesInput(@Value("cardTransactionInput") File inputDir,
+			BoundedWorkStealingExecutor normalizerFilesExecutor,
+			@Value("${normalizer.files.min-age:1}") long minAge) {
+
+		// A file which is still being written is skipped until it has not been modified for the min-age seconds
+		ChainFileListFilter<File> filter = new ChainFileListFilter<>();
+		filter.addFilter(new LastModifiedFileListFilter(minAge));
+		filter.addFilter(new AcceptOnceFileListFilter<>());
+
+		return IntegrationFlow.from(Files.inboundAdapter(inputDir)
+								.useWatchService(true)
+								.watchEvents(FileReadingMessageSource.WatchEventType.CREATE,
+										FileReadingMessageSource.WatchEventType.MODIFY)
+								.filter(filter),
+						endpoint -> endpoint.poller(poller -> poller.fixedDelay(1000, 1000).maxMessagesPerPoll(-1)))
+				// The poller thread only hands files over, they are loaded and normalized in parallel
+				.channel(channel -> channel.executor(normalizerFilesExecutor))
+				.<File, Properties>transform(payload ->
+						BoundedWorkStealingExecutor.managedBlock(() -> {
+							try {
+								return PropertiesLoaderUtils.loadProperties(new FileSystemResource(payload));
+							}
+							catch (IOException ex) {
+								throw new UncheckedIOException(ex);
+							}
+						}))
 				.enrichHeaders(
 						Map.of(MessageHeaders.CONTENT_TYPE, "application/properties",
 								MessageHeaders.REPLY_CHANNEL, "normalizerFilesOutput.input"))
@@ -76,81 +191,129 @@ public class NormalizerApplication {
 	}
 
 	@Bean
-	IntegrationFlow normalizerFilesOutput(@Value("cardTransactionOutput") File outputDir) {
+	IntegrationFlow normalizerFilesOutput(@Value("cardTransactionOutput") File outputDir,
+			@Value("${normalizer.files.output-capacity:1000}") int outputCapacity,
+			@Value("${normalizer.files.write-batch-size:100}") int writeBatchSize) {
+
+		// The normalizing workers wait for a full output queue as managed blockers
+		QueueChannel outputQueue =
+				new QueueChannel(outputCapacity) {
+
+					@Override
+					protected boolean doSend(Message<?> message, long timeout) {
+						return BoundedWorkStealingExecutor.managedBlock(() -> super.doSend(message, timeout));
+					}
+
+				};
+
 		return f -> f
+				.channel(outputQueue)
 				.handle(Files.outboundAdapter(outputDir)
+								.fileNameGenerator(message ->
+										message.getHeaders().get(FileHeaders.FILENAME, String.class).split("\\.")[0] + ".json"),
+						endpoint -> endpoint.poller(poller -> poller.fixedDelay(100).maxMessagesPerPoll(writeBatchSize)));
+	}
+
+	@Bean
+	MetadataStore normalizerCheckpointStore(
+			@Value("${normalizer.batch.checkpoint-dir:cardTransactionCheckpoints}") String checkpointDir) {
+
+		PropertiesPersistingMetadataStore checkpointStore = new PropertiesPersistingMetadataStore();
+		checkpointStore.setBaseDirectory(checkpointDir);
+		return checkpointStore;
+	}
+
+	@Bean
+	IntegrationFlow normalizerBatchFilesInput(@Value("cardTransactionBatchInput") File inputDir,
+			MetadataStore normalizerCheckpointStore,
+			@Value("${normalizer.batch.checkpoint-interval:1000}") int checkpointInterval) {
+
+		return IntegrationFlow.from(Files.inboundAdapter(inputDir).regexFilter(".+\\.(csv|xml)"),
+						endpoint -> endpoint.poller(poller -> poller.fixedDelay(1000, 1000)))
+				.enrichHeaders(headers -> headers
+						.headerExpression(MessageHeaders.CONTENT_TYPE,
+								"payload.name.endsWith('.xml') ? 'application/xml' : 'text/csv'")
+						.header(MessageHeaders.REPLY_CHANNEL, "normalizerBatchFilesOutput.input"))
+				.split(File.class, file ->
+						(file.getName().endsWith(".xml")
+								? FileRecordIterator.elements(file, "card-transaction", normalizerCheckpointStore)
+								: FileRecordIterator.lines(file, normalizerCheckpointStore))
+								.checkpointInterval(checkpointInterval))
+				.channel("normalizer.input")
+				.get();
+	}
+
+	@Bean
+	IntegrationFlow normalizerBatchFilesOutput(@Value("cardTransactionOutput") File outputDir,
+			ObjectMapper objectMapper) {
+
+		ObjectMapper ndjsonMapper = objectMapper.copy().disable(SerializationFeature.INDENT_OUTPUT);
+		return f -> f
+				.transform(Transformers.toJson(new Jackson2JsonObjectMapper(ndjsonMapper)))
+				.handle(Files.outboundAdapter(outputDir)
+						.fileExistsMode(FileExistsMode.APPEND)
+						.appendNewLine(true)
 						.fileNameGenerator(message ->
-								message.getHeaders().get(FileHeaders.FILENAME, String.class).split("\\.")[0] + ".json"));
+								message.getHeaders().get(FileHeaders.FILENAME, String.class).split("\\.")[0] + ".ndjson"));
+	}
+
+	@Bean
+	Jaxb2Marshaller normalizerJaxb2Marshaller() {
+		Jaxb2Marshaller jaxb2Marshaller = new Jaxb2Marshaller();
+		jaxb2Marshaller.setClassesToBeBound(CreditCardTransaction.class);
+		return jaxb2Marshaller;
 	}
 
 	@Bean
-	Normalizer normalizer(ObjectMapper objectMapper) {
-		return new Normalizer(objectMapper);
+	NormalizerFormatRegistry normalizerFormatRegistry(ObjectMapper objectMapper, Jaxb2Marshaller normalizerJaxb2Marshaller,
+			@Value("${normalizer.transcoding.direct:false}") boolean directTranscoding,
+			@Value("${normalizer.xml.unmarshaller-pool-size:0}") int unmarshallerPoolSize,
+			ObjectProvider<NormalizerFormat> additionalFormats) {
+
+		NormalizerFormatRegistry formatRegistry = new NormalizerFormatRegistry();
+		new CreditCardTransactionFormats(objectMapper, normalizerJaxb2Marshaller, directTranscoding, unmarshallerPoolSize)
+				.getFormats()
+				.forEach(formatRegistry::register);
+		// Format beans override the built-in ones for the same content type
+		additionalFormats.orderedStream().forEach(formatRegistry::register);
+		return formatRegistry;
 	}
 
+	@Bean
+	Normalizer normalizer(NormalizerFormatRegistry normalizerFormatRegistry) {
+		return new Normalizer(normalizerFormatRegistry);
+	}
 
-	public static class Normalizer extends IntegrationFlowAdapter implements BeanClassLoaderAware, InitializingBean {
+	public record RecordError(long record, String error) {
 
-		private final ObjectMapper objectMapper;
+	}
 
-		private final Jaxb2Marshaller jaxb2Marshaller = new Jaxb2Marshaller();
+	@MessagingGateway
+	public interface RecordNormalizer {
 
-		public Normalizer(ObjectMapper objectMapper) {
-			this.objectMapper = objectMapper;
-		}
+		@Gateway(requestChannel = "normalizer.input")
+		Object normalize(@Payload String record, @Header(MessageHeaders.CONTENT_TYPE) String contentType);
 
-		@Override
-		public void setBeanClassLoader(ClassLoader classLoader) {
-			this.jaxb2Marshaller.setBeanClassLoader(classLoader);
-		}
+	}
 
-		@Override
-		public void afterPropertiesSet() throws Exception {
-			this.jaxb2Marshaller.setClassesToBeBound(CreditCardTransaction.class);
-			this.jaxb2Marshaller.afterPropertiesSet();
+	public static class Normalizer extends IntegrationFlowAdapter {
+
+		private final NormalizerFormatRegistry formatRegistry;
+
+		public Normalizer(NormalizerFormatRegistry formatRegistry) {
+			this.formatRegistry = formatRegistry;
 		}
 
 		@Override
 		protected IntegrationFlowDefinition<?> buildFlow() {
 			return from("normalizer.input")
 					.log(LoggingHandler.Level.DEBUG, "org.springframework.integration.microservices.normalizer", "payload")
-					.route(Message.class, m -> m.getHeaders().get(MessageHeaders.CONTENT_TYPE),
-							routeMapping -> routeMapping
-									.subFlowMapping(MediaType.APPLICATION_XML_VALUE, xmlToJson())
-									.subFlowMapping("text/csv", csvToJson())
-									.subFlowMapping("application/properties", propertiesToJson()));
-		}
-
-		private IntegrationFlow xmlToJson() {
-			return f -> f.transform(new UnmarshallingTransformer(this.jaxb2Marshaller));
-		}
-
-		private IntegrationFlow csvToJson() {
-			return f -> f
-					.<String, CreditCardTransaction>transform(payload -> {
-						String[] attributes = StringUtils.commaDelimitedListToStringArray(payload);
-						CreditCardTransaction cardTransaction = new CreditCardTransaction();
-						cardTransaction.setId(Long.parseLong(attributes[0]));
-						cardTransaction.setCardNumber(attributes[1]);
-						cardTransaction.setTransactionDate(new Date(Long.parseLong(attributes[2])));
-						cardTransaction.setAmount(new BigDecimal(attributes[3]));
-						cardTransaction.setMerchant(attributes[4]);
-						return cardTransaction;
-					});
-		}
-
-		private IntegrationFlow propertiesToJson() {
-			return f -> f
-					.<Properties, CreditCardTransaction>transform(payload -> {
-						CreditCardTransaction cardTransaction = new CreditCardTransaction();
-						cardTransaction.setId(Long.parseLong(payload.getProperty("card-transaction.id")));
-						cardTransaction.setCardNumber(payload.getProperty("card-transaction.card-number"));
-						cardTransaction.setTransactionDate(new Date(Long.parseLong(payload.getProperty("card-transaction.date"))));
-						cardTransaction.setAmount(new BigDecimal(payload.getProperty("card-transaction.amount")));
-						cardTransaction.setMerchant(payload.getProperty("card-transaction.merchant"));
-						return cardTransaction;
-					})
-					.transform(Transformers.toJson(new Jackson2JsonObjectMapper(this.objectMapper)));
+					.route(Message.class, this.formatRegistry::formatName,
+							routeMapping -> this.formatRegistry.getFormats()
+									.forEach(format ->
+											routeMapping.subFlowMapping(format.getName(),
+													f -> f.<Object, Object>transform(payload ->
+															this.formatRegistry.normalize(format, payload)))));
 		}
 
 	}
@@ -0,0 +1,37 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.util.MimeType;
+
+public interface NormalizerFormat {
+
+	String getName();
+
+	List<MimeType> getContentTypes();
+
+	Object normalize(Object payload);
+
+	static NormalizerFormat of(String name, MimeType contentType, Function<Object, Object> normalizer) {
+		return new NormalizerFormat() {
+
+			@Override
+			public String getName() {
+				return name;
+			}
+
+			@Override
+			public List<MimeType> getContentTypes() {
+				return List.of(contentType);
+			}
+
+			@Override
+			public Object normalize(Object payload) {
+				return normalizer.apply(payload);
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,99 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+public class NormalizerFormatRegistry implements MeterBinder {
+
+	private static final int MAX_CACHED_CONTENT_TYPES = 1024;
+
+	private final Map<String, NormalizerFormat> formats = new LinkedHashMap<>();
+
+	private final Map<String, NormalizerFormat> formatsByContentType = new ConcurrentHashMap<>();
+
+	private final Map<Object, NormalizerFormat> resolvedContentTypes = new ConcurrentHashMap<>();
+
+	private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+	private volatile MeterRegistry meterRegistry;
+
+	public void register(NormalizerFormat format) {
+		this.formats.put(format.getName(), format);
+		format.getContentTypes()
+				.forEach(contentType -> this.formatsByContentType.put(typeAndSubtype(contentType), format));
+		this.resolvedContentTypes.clear();
+	}
+
+	public Collection<NormalizerFormat> getFormats() {
+		return this.formats.values();
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		this.meterRegistry = registry;
+	}
+
+	public boolean supports(Object contentType) {
+		return resolve(contentType) != null;
+	}
+
+	public String formatName(Message<?> message) {
+		NormalizerFormat format = resolve(message.getHeaders().get(MessageHeaders.CONTENT_TYPE));
+		return format != null ? format.getName() : null;
+	}
+
+	public Object normalize(NormalizerFormat format, Object payload) {
+		MeterRegistry registry = this.meterRegistry;
+		if (registry == null) {
+			return format.normalize(payload);
+		}
+		Timer timer =
+				this.timers.computeIfAbsent(format.getName(), name ->
+						Timer.builder("normalizer.format")
+								.description("The time to normalize a record of the format")
+								.tag("format", name)
+								.register(registry));
+		return timer.record(() -> format.normalize(payload));
+	}
+
+	private NormalizerFormat resolve(Object contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		NormalizerFormat format = this.resolvedContentTypes.get(contentType);
+		if (format == null) {
+			// Parameters like charset are parsed once per distinct header value and ignored for routing
+			try {
+				MimeType mimeType =
+						contentType instanceof MimeType parsed
+								? parsed
+								: MimeTypeUtils.parseMimeType(contentType.toString());
+				format = this.formatsByContentType.get(typeAndSubtype(mimeType));
+			}
+			catch (InvalidMimeTypeException ex) {
+				return null;
+			}
+			if (format != null && this.resolvedContentTypes.size() < MAX_CACHED_CONTENT_TYPES) {
+				this.resolvedContentTypes.put(contentType, format);
+			}
+		}
+		return format;
+	}
+
+	private static String typeAndSubtype(MimeType mimeType) {
+		return mimeType.getType() + '/' + mimeType.getSubtype();
+	}
+
+}
@@ -0,0 +1,86 @@
+package org.springframework.integration.microservices.normalizer;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Unmarshaller;
+
+import org.springframework.integration.core.GenericTransformer;
+import org.springframework.oxm.UnmarshallingFailureException;
+import org.springframework.oxm.jaxb.Jaxb2Marshaller;
+
+public class PooledJaxbUnmarshaller implements GenericTransformer<Object, Object> {
+
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newFactory();
+
+	static {
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+		XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+	}
+
+	private final Jaxb2Marshaller jaxb2Marshaller;
+
+	private final BlockingQueue<Unmarshaller> unmarshallers;
+
+	public PooledJaxbUnmarshaller(Jaxb2Marshaller jaxb2Marshaller, int poolSize) {
+		this.jaxb2Marshaller = jaxb2Marshaller;
+		this.unmarshallers = new ArrayBlockingQueue<>(poolSize);
+	}
+
+	@Override
+	public Object transform(Object source) {
+		Unmarshaller unmarshaller = borrow();
+		try {
+			XMLStreamReader xmlStreamReader = xmlStreamReader(source);
+			try {
+				return unmarshaller.unmarshal(xmlStreamReader);
+			}
+			finally {
+				xmlStreamReader.close();
+			}
+		}
+		catch (JAXBException | XMLStreamException ex) {
+			throw new UnmarshallingFailureException("Cannot unmarshal XML with JAXB", ex);
+		}
+		finally {
+			// An extra unmarshaller beyond the pool size is just left for GC
+			this.unmarshallers.offer(unmarshaller);
+		}
+	}
+
+	private Unmarshaller borrow() {
+		Unmarshaller unmarshaller = this.unmarshallers.poll();
+		if (unmarshaller != null) {
+			return unmarshaller;
+		}
+		try {
+			// The JAXBContext is built once by the Jaxb2Marshaller and shared
+			return this.jaxb2Marshaller.getJaxbContext().createUnmarshaller();
+		}
+		catch (JAXBException ex) {
+			throw new UnmarshallingFailureException("Cannot create a JAXB unmarshaller", ex);
+		}
+	}
+
+	private static XMLStreamReader xmlStreamReader(Object source) throws XMLStreamException {
+		if (source instanceof String string) {
+			return XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(string));
+		}
+		if (source instanceof byte[] bytes) {
+			return XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(bytes));
+		}
+		if (source instanceof InputStream inputStream) {
+			return XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+		}
+		throw new IllegalArgumentException("Unsupported XML source type: " + source.getClass());
+	}
+
+}
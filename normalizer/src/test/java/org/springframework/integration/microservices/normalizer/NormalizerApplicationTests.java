@@ -4,28 +4,60 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.util.RawValue;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
 import org.springframework.http.MediaType;
+import org.springframework.integration.core.MessagingTemplate;
+import org.springframework.integration.metadata.SimpleMetadataStore;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
 import org.springframework.oxm.jaxb.Jaxb2Marshaller;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.xml.transform.StringResult;
+import org.springframework.xml.transform.StringSource;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
 import static org.awaitility.Awaitility.await;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -33,6 +65,8 @@ import static org.awaitility.Awaitility.await;
 @DirtiesContext
 class NormalizerApplicationTests {
 
+	private static final Log LOGGER = LogFactory.getLog(NormalizerApplicationTests.class);
+
 	@Autowired
 	WebTestClient webTestClient;
 
@@ -42,9 +76,16 @@ class NormalizerApplicationTests {
 	@Value("cardTransactionOutput")
 	File outputDir;
 
+	@Value("cardTransactionBatchInput")
+	File batchInputDir;
+
 	@Autowired
 	ObjectMapper objectMapper;
 
+	@Autowired
+	@Qualifier("normalizer.input")
+	MessageChannel normalizerInput;
+
 	CreditCardTransaction cardTransaction;
 
 	@BeforeAll
@@ -86,16 +127,7 @@ class NormalizerApplicationTests {
 
 	@Test
 	void normalizeCsv() {
-		String csvRecord =
-				String.valueOf(this.cardTransaction.getId()) +
-						',' +
-						this.cardTransaction.getCardNumber() +
-						',' +
-						this.cardTransaction.getTransactionDate().getTime() +
-						',' +
-						this.cardTransaction.getAmount() +
-						',' +
-						this.cardTransaction.getMerchant();
+		String csvRecord = csvRecord();
 
 		CreditCardTransaction creditCardTransaction =
 				this.webTestClient.post()
@@ -111,6 +143,290 @@ class NormalizerApplicationTests {
 		assertThat(creditCardTransaction).isEqualTo(this.cardTransaction);
 	}
 
+	@Test
+	void normalizeCsvWithCharset() {
+		CreditCardTransaction creditCardTransaction =
+				this.webTestClient.post()
+						.uri("/normalize")
+						.contentType(MediaType.parseMediaType("text/csv; charset=UTF-8"))
+						.bodyValue(csvRecord())
+						.exchange()
+						.expectStatus().isOk()
+						.expectBody(CreditCardTransaction.class)
+						.returnResult()
+						.getResponseBody();
+
+		assertThat(creditCardTransaction).isEqualTo(this.cardTransaction);
+	}
+
+	@Test
+	void normalizeWithUserSuppliedFormat() {
+		CreditCardTransaction creditCardTransaction =
+				this.webTestClient.post()
+						.uri("/normalize")
+						.contentType(MediaType.parseMediaType("text/x-psv"))
+						.bodyValue(csvRecord().replace(',', '|'))
+						.exchange()
+						.expectStatus().isOk()
+						.expectBody(CreditCardTransaction.class)
+						.returnResult()
+						.getResponseBody();
+
+		assertThat(creditCardTransaction).isEqualTo(this.cardTransaction);
+	}
+
+	@Test
+	void normalizeBytesPayload() {
+		MessagingTemplate messagingTemplate = new MessagingTemplate(this.normalizerInput);
+		messagingTemplate.setReceiveTimeout(10_000);
+
+		Message<?> csvReply =
+				messagingTemplate.sendAndReceive(
+						MessageBuilder.withPayload(csvRecord().getBytes(StandardCharsets.UTF_8))
+								.setHeader(MessageHeaders.CONTENT_TYPE, "text/csv")
+								.build());
+		Message<?> xmlReply =
+				messagingTemplate.sendAndReceive(
+						MessageBuilder.withPayload(xmlRecord().getBytes(StandardCharsets.UTF_8))
+								.setHeader(MessageHeaders.CONTENT_TYPE, MediaType.APPLICATION_XML_VALUE)
+								.build());
+
+		assertThat(csvReply).extracting(Message::getPayload).isEqualTo(this.cardTransaction);
+		assertThat(xmlReply).extracting(Message::getPayload).isEqualTo(this.cardTransaction);
+	}
+
+	@Test
+	void normalizeCsvBatch() {
+		List<CreditCardTransaction> creditCardTransactions =
+				this.webTestClient.post()
+						.uri("/normalize/batch")
+						.contentType(MediaType.parseMediaType("text/csv"))
+						.accept(MediaType.APPLICATION_NDJSON)
+						.bodyValue(csvRecord() + '\n' + csvRecord())
+						.exchange()
+						.expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+						.expectBodyList(CreditCardTransaction.class)
+						.returnResult()
+						.getResponseBody();
+
+		assertThat(creditCardTransactions).containsExactly(this.cardTransaction, this.cardTransaction);
+	}
+
+	@Test
+	void normalizeXmlBatch() {
+		List<CreditCardTransaction> creditCardTransactions =
+				this.webTestClient.post()
+						.uri("/normalize/batch")
+						.contentType(MediaType.APPLICATION_XML)
+						.accept(MediaType.APPLICATION_NDJSON)
+						.bodyValue("<?xml version=\"1.0\"?>\n<card-transactions>\n" + xmlRecord() + '\n' + xmlRecord() +
+								"\n</card-transactions>\n")
+						.exchange()
+						.expectStatus().isOk()
+						.expectBodyList(CreditCardTransaction.class)
+						.returnResult()
+						.getResponseBody();
+
+		assertThat(creditCardTransactions).containsExactly(this.cardTransaction, this.cardTransaction);
+	}
+
+	@Test
+	void normalizeNdjsonBatch() throws IOException {
+		String jsonRecord = this.objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT)
+				.writeValueAsString(this.cardTransaction);
+
+		List<CreditCardTransaction> creditCardTransactions =
+				this.webTestClient.post()
+						.uri("/normalize/batch")
+						.contentType(MediaType.APPLICATION_NDJSON)
+						.accept(MediaType.APPLICATION_NDJSON)
+						.bodyValue(jsonRecord + '\n' + jsonRecord + '\n')
+						.exchange()
+						.expectStatus().isOk()
+						.expectBodyList(CreditCardTransaction.class)
+						.returnResult()
+						.getResponseBody();
+
+		assertThat(creditCardTransactions).containsExactly(this.cardTransaction, this.cardTransaction);
+	}
+
+	@Test
+	void normalizeBatchReportsBadRecordInItsLine() throws IOException {
+		List<JsonNode> lines =
+				this.webTestClient.post()
+						.uri("/normalize/batch")
+						.contentType(MediaType.parseMediaType("text/csv"))
+						.accept(MediaType.APPLICATION_NDJSON)
+						.bodyValue(csvRecord() + "\nnot,a,card,transaction\n" + csvRecord())
+						.exchange()
+						.expectStatus().isOk()
+						.expectBodyList(JsonNode.class)
+						.returnResult()
+						.getResponseBody();
+
+		assertThat(lines).hasSize(3);
+		assertThat(this.objectMapper.treeToValue(lines.get(0), CreditCardTransaction.class)).isEqualTo(this.cardTransaction);
+		assertThat(lines.get(1).get("record").asLong()).isEqualTo(1);
+		assertThat(lines.get(1).get("error").asText()).isNotEmpty();
+		assertThat(this.objectMapper.treeToValue(lines.get(2), CreditCardTransaction.class)).isEqualTo(this.cardTransaction);
+	}
+
+	@Test
+	void normalizeBatchRejectsMissingOrUnsupportedContentType() {
+		// No body encoder, so no Content-Type header is set
+		this.webTestClient.post()
+				.uri("/normalize/batch")
+				.accept(MediaType.APPLICATION_NDJSON)
+				.body(BodyInserters.fromDataBuffers(
+						Flux.just(DefaultDataBufferFactory.sharedInstance.wrap(csvRecord().getBytes(StandardCharsets.UTF_8)))))
+				.exchange()
+				.expectStatus().isEqualTo(415);
+
+		this.webTestClient.post()
+				.uri("/normalize/batch")
+				.contentType(MediaType.TEXT_PLAIN)
+				.accept(MediaType.APPLICATION_NDJSON)
+				.bodyValue(csvRecord())
+				.exchange()
+				.expectStatus().isEqualTo(415);
+	}
+
+	@Test
+	void csvParserReadsAmounts() {
+		assertThat(csvAmount("3456.97")).isEqualTo(new BigDecimal("3456.97"));
+		assertThat(csvAmount("-12.50")).isEqualTo(new BigDecimal("-12.50"));
+		assertThat(csvAmount("+12.50")).isEqualTo(new BigDecimal("12.50"));
+		assertThat(csvAmount("12")).isEqualTo(new BigDecimal("12"));
+		assertThat(csvAmount(".5")).isEqualTo(new BigDecimal("0.5"));
+		// More than 18 digits and exponents are left to the BigDecimal parser
+		assertThat(csvAmount("-1234567890123456789.123")).isEqualTo(new BigDecimal("-1234567890123456789.123"));
+		assertThat(csvAmount("1e3")).isEqualTo(new BigDecimal("1e3"));
+
+		for (String malformed : List.of("", "-", ".", "1.2.3", "12a", "+-1")) {
+			assertThatExceptionOfType(NumberFormatException.class).isThrownBy(() -> csvAmount(malformed));
+		}
+	}
+
+	@Test
+	void csvParserChecksFields() throws IOException {
+		CreditCardTransaction cardTransaction =
+				CreditCardTransactionCsvParser.parse("1,4576-0120-5553-5675,1000,12.50,Shop,extra,fields");
+
+		// Fields after the merchant are ignored
+		assertThat(cardTransaction.getId()).isEqualTo(1L);
+		assertThat(cardTransaction.getCardNumber()).isEqualTo("4576-0120-5553-5675");
+		assertThat(cardTransaction.getTransactionDate()).isEqualTo(new Date(1000));
+		assertThat(cardTransaction.getAmount()).isEqualTo(new BigDecimal("12.50"));
+		assertThat(cardTransaction.getMerchant()).isEqualTo("Shop");
+		assertThat(this.objectMapper.readValue(
+				new CreditCardTransactionJsonTranscoder(this.objectMapper)
+						.csvToJson("1,4576-0120-5553-5675,1000,12.50,Shop,extra,fields")
+						.rawValue()
+						.toString(),
+				CreditCardTransaction.class))
+				.isEqualTo(cardTransaction);
+
+		assertThatIllegalArgumentException()
+				.isThrownBy(() -> CreditCardTransactionCsvParser.parse("1,4576-0120-5553-5675,1000,12.50"))
+				.withMessageStartingWith("Expected 5 CSV fields");
+		assertThatExceptionOfType(NumberFormatException.class)
+				.isThrownBy(() -> CreditCardTransactionCsvParser.parse("one,4576-0120-5553-5675,1000,12.50,Shop"));
+	}
+
+	private static BigDecimal csvAmount(String amount) {
+		return CreditCardTransactionCsvParser.parse("1,4576-0120-5553-5675,1000," + amount + ",Shop").getAmount();
+	}
+
+	@Test
+	void directTranscodingMatchesPojoNormalization() throws IOException {
+		CreditCardTransactionJsonTranscoder transcoder = new CreditCardTransactionJsonTranscoder(this.objectMapper);
+		ObjectWriter objectWriter = this.objectMapper.writer().without(SerializationFeature.INDENT_OUTPUT);
+		Jaxb2Marshaller jaxb2Marshaller = new Jaxb2Marshaller();
+		jaxb2Marshaller.setClassesToBeBound(CreditCardTransaction.class);
+		String csvRecord = csvRecord();
+		String xmlRecord = xmlRecord();
+
+		String csvJson = objectWriter.writeValueAsString(CreditCardTransactionCsvParser.parse(csvRecord));
+		String xmlJson = objectWriter.writeValueAsString(jaxb2Marshaller.unmarshal(new StringSource(xmlRecord)));
+
+		assertThat(readTree(transcoder.csvToJson(csvRecord))).isEqualTo(this.objectMapper.readTree(csvJson));
+		assertThat(readTree(transcoder.xmlToJson(xmlRecord))).isEqualTo(this.objectMapper.readTree(xmlJson));
+
+		int records = 20_000;
+		long csvPojoNanos = timed(records, () ->
+				objectWriter.writeValueAsString(CreditCardTransactionCsvParser.parse(csvRecord)));
+		long csvDirectNanos = timed(records, () -> transcoder.csvToJson(csvRecord));
+		long xmlPojoNanos = timed(records, () ->
+				objectWriter.writeValueAsString(jaxb2Marshaller.unmarshal(new StringSource(xmlRecord))));
+		long xmlDirectNanos = timed(records, () -> transcoder.xmlToJson(xmlRecord));
+
+		LOGGER.info(String.format("CSV to JSON: %d ns/record via POJO, %d ns/record direct; " +
+						"XML to JSON: %d ns/record via POJO, %d ns/record direct",
+				csvPojoNanos / records, csvDirectNanos / records, xmlPojoNanos / records, xmlDirectNanos / records));
+	}
+
+	@Test
+	void pooledUnmarshallerIsSharedByConcurrentThreads() throws Exception {
+		Jaxb2Marshaller jaxb2Marshaller = new Jaxb2Marshaller();
+		jaxb2Marshaller.setClassesToBeBound(CreditCardTransaction.class);
+		jaxb2Marshaller.afterPropertiesSet();
+		PooledJaxbUnmarshaller pooledUnmarshaller = new PooledJaxbUnmarshaller(jaxb2Marshaller, 2);
+		String xmlRecord = xmlRecord();
+
+		assertThat(pooledUnmarshaller.transform(xmlRecord)).isEqualTo(this.cardTransaction);
+		assertThat(pooledUnmarshaller.transform(xmlRecord.getBytes(StandardCharsets.UTF_8)))
+				.isEqualTo(this.cardTransaction);
+
+		// More threads than pooled unmarshallers: the extra ones are created and dropped
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				futures.add(executor.submit(() -> {
+					for (int record = 0; record < 1000; record++) {
+						assertThat(pooledUnmarshaller.transform(xmlRecord)).isEqualTo(this.cardTransaction);
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get(60, TimeUnit.SECONDS);
+			}
+		}
+		finally {
+			executor.shutdownNow();
+		}
+
+		int records = 20_000;
+		long unmarshallerPerRecordNanos = timed(records, () -> jaxb2Marshaller.unmarshal(new StringSource(xmlRecord)));
+		long pooledNanos = timed(records, () -> pooledUnmarshaller.transform(xmlRecord));
+
+		LOGGER.info(String.format("XML unmarshalling: %d ns/record with an unmarshaller per record, %d ns/record pooled",
+				unmarshallerPerRecordNanos / records, pooledNanos / records));
+	}
+
+	private JsonNode readTree(RawValue json) throws IOException {
+		return this.objectMapper.readTree((String) json.rawValue());
+	}
+
+	// The same number of untimed runs goes first as a warm-up
+	private static long timed(int records, Normalization normalization) throws IOException {
+		for (int i = 0; i < records; i++) {
+			normalization.normalize();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < records; i++) {
+			normalization.normalize();
+		}
+		return System.nanoTime() - start;
+	}
+
+	@FunctionalInterface
+	private interface Normalization {
+
+		Object normalize() throws IOException;
+
+	}
+
 	@Test
 	void normalizePropertiesFile() throws IOException {
 		Properties cardTransactionProperties = new Properties();
@@ -136,4 +452,123 @@ class NormalizerApplicationTests {
 		assertThat(creditCardTransaction).isEqualTo(this.cardTransaction);
 	}
 
+	@Test
+	void normalizeCsvBatchFile() throws IOException {
+		String fileName = "testCardTransactionBatch";
+
+		File ndjsonFile = new File(this.outputDir, fileName + ".ndjson");
+		java.nio.file.Files.deleteIfExists(ndjsonFile.toPath());
+
+		File csvFile = new File(this.batchInputDir, fileName + ".csv");
+		FileUtils.writeStringToFile(csvFile, csvRecord() + "\r\n\n" + csvRecord() + '\n', StandardCharsets.UTF_8);
+
+		await().until(() -> ndjsonFile.exists() && FileUtils.readLines(ndjsonFile, StandardCharsets.UTF_8).size() == 2);
+
+		for (String jsonLine : FileUtils.readLines(ndjsonFile, StandardCharsets.UTF_8)) {
+			assertThat(this.objectMapper.readValue(jsonLine, CreditCardTransaction.class)).isEqualTo(this.cardTransaction);
+		}
+	}
+
+	@Test
+	void normalizeXmlBatchFile() throws IOException {
+		String fileName = "testCardTransactionXmlBatch";
+
+		File ndjsonFile = new File(this.outputDir, fileName + ".ndjson");
+		java.nio.file.Files.deleteIfExists(ndjsonFile.toPath());
+
+		File xmlFile = new File(this.batchInputDir, fileName + ".xml");
+		FileUtils.writeStringToFile(xmlFile,
+				"<?xml version=\"1.0\"?>\n<card-transactions>\n" + xmlRecord() + '\n' + xmlRecord() + "\n</card-transactions>\n",
+				StandardCharsets.UTF_8);
+
+		await().until(() -> ndjsonFile.exists() && FileUtils.readLines(ndjsonFile, StandardCharsets.UTF_8).size() == 2);
+
+		for (String jsonLine : FileUtils.readLines(ndjsonFile, StandardCharsets.UTF_8)) {
+			assertThat(this.objectMapper.readValue(jsonLine, CreditCardTransaction.class)).isEqualTo(this.cardTransaction);
+		}
+	}
+
+	@Test
+	void fileRecordIteratorSkipsWrappingElementWithSamePrefix(@TempDir Path directory) throws IOException {
+		File xmlFile = directory.resolve("transactions.xml").toFile();
+		FileUtils.writeStringToFile(xmlFile,
+				"<card-transactions count=\"2\">\n" +
+						"<card-transaction id=\"1\"><id>1</id></card-transaction>\n" +
+						"<card-transaction><id>2</id></card-transaction>\n" +
+						"</card-transactions>\n",
+				StandardCharsets.UTF_8);
+
+		// A small chunk size makes the element search cross the chunk boundaries
+		FileRecordIterator records =
+				FileRecordIterator.elements(xmlFile, "card-transaction", new SimpleMetadataStore()).chunkSize(64);
+
+		assertThat(drain(records))
+				.containsExactly(
+						"<card-transaction id=\"1\"><id>1</id></card-transaction>",
+						"<card-transaction><id>2</id></card-transaction>");
+	}
+
+	@Test
+	void fileRecordIteratorResumesFromCheckpoint(@TempDir Path directory) throws IOException {
+		File csvFile = directory.resolve("transactions.csv").toFile();
+		FileUtils.writeStringToFile(csvFile, "1\n2\n3\n4\n5\n", StandardCharsets.UTF_8);
+		ConcurrentMap<String, String> checkpoints = new ConcurrentHashMap<>();
+
+		FileRecordIterator records =
+				FileRecordIterator.lines(csvFile, new SimpleMetadataStore(checkpoints)).checkpointInterval(2);
+		assertThat(records.next()).isEqualTo("1");
+		assertThat(records.next()).isEqualTo("2");
+		// The checkpoint is taken when the next record is requested after the processed ones
+		assertThat(records.next()).isEqualTo("3");
+		records.close();
+
+		assertThat(checkpoints).hasSize(1);
+
+		FileRecordIterator resumed =
+				FileRecordIterator.lines(csvFile, new SimpleMetadataStore(checkpoints)).checkpointInterval(2);
+		assertThat(drain(resumed)).containsExactly("3", "4", "5");
+
+		// The checkpoint of a completed file is removed
+		assertThat(checkpoints).isEmpty();
+	}
+
+	private static List<String> drain(FileRecordIterator records) {
+		List<String> drained = new ArrayList<>();
+		records.forEachRemaining(drained::add);
+		return drained;
+	}
+
+	private String xmlRecord() {
+		StringResult stringResult = new StringResult();
+		Jaxb2Marshaller jaxb2Marshaller = new Jaxb2Marshaller();
+		jaxb2Marshaller.setClassesToBeBound(CreditCardTransaction.class);
+		jaxb2Marshaller.marshal(this.cardTransaction, stringResult);
+		String xml = stringResult.toString();
+		// Without the XML declaration, so the records can be wrapped into a single document
+		return xml.substring(xml.indexOf("<card-transaction"));
+	}
+
+	private String csvRecord() {
+		return String.valueOf(this.cardTransaction.getId()) +
+				',' +
+				this.cardTransaction.getCardNumber() +
+				',' +
+				this.cardTransaction.getTransactionDate().getTime() +
+				',' +
+				this.cardTransaction.getAmount() +
+				',' +
+				this.cardTransaction.getMerchant();
+	}
+
+	@TestConfiguration
+	static class UserFormatConfiguration {
+
+		@Bean
+		NormalizerFormat pipeSeparatedFormat() {
+			return NormalizerFormat.of("psv", MediaType.parseMediaType("text/x-psv"),
+					payload -> CreditCardTransactionCsvParser.parse(((String) payload).replace('|', ',')));
+		}
+
+	}
+
 }
@@ -0,0 +1,223 @@
+package org.springframework.integration.microservices.outbox;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.UnaryOperator;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.integration.handler.AbstractMessageProducingHandler;
+import org.springframework.integration.support.management.ManageableLifecycle;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessagingException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+public class GroupCommitMessageHandler extends AbstractMessageProducingHandler
+		implements ManageableLifecycle, DisposableBean {
+
+	private final BlockingQueue<PendingMessage> pendingMessages = new LinkedBlockingQueue<>();
+
+	private final TransactionTemplate transactionTemplate;
+
+	private int maxBatchSize = 100;
+
+	private Duration window = Duration.ZERO;
+
+	private Duration commitTimeout = Duration.ofSeconds(30);
+
+	private UnaryOperator<Message<?>> retryMessageFunction = UnaryOperator.identity();
+
+	private volatile Thread committer;
+
+	public GroupCommitMessageHandler(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	public void setWindow(Duration window) {
+		this.window = window;
+	}
+
+	public void setCommitTimeout(Duration commitTimeout) {
+		this.commitTimeout = commitTimeout;
+	}
+
+	public void setRetryMessageFunction(UnaryOperator<Message<?>> retryMessageFunction) {
+		this.retryMessageFunction = retryMessageFunction;
+	}
+
+	@Override
+	protected void onInit() {
+		super.onInit();
+		start();
+	}
+
+	@Override
+	public synchronized void start() {
+		if (this.committer == null) {
+			Thread committer = new Thread(this::commitLoop, "outbox-group-commit");
+			committer.setDaemon(true);
+			committer.start();
+			this.committer = committer;
+		}
+	}
+
+	@Override
+	public synchronized void stop() {
+		Thread committer = this.committer;
+		if (committer != null) {
+			this.committer = null;
+			committer.interrupt();
+			try {
+				committer.join(this.commitTimeout.toMillis());
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+			PendingMessage pendingMessage;
+			while ((pendingMessage = this.pendingMessages.poll()) != null) {
+				if (pendingMessage.claim()) {
+					pendingMessage.committed().completeExceptionally(
+							new MessageDeliveryException(pendingMessage.message(), "The group commit has been stopped"));
+				}
+			}
+		}
+	}
+
+	@Override
+	public boolean isRunning() {
+		return this.committer != null;
+	}
+
+	@Override
+	public void destroy() {
+		stop();
+	}
+
+	@Override
+	protected void handleMessageInternal(Message<?> message) {
+		if (!isRunning()) {
+			throw new MessageDeliveryException(message, "The group commit is not running");
+		}
+		PendingMessage pendingMessage = new PendingMessage(message, new CompletableFuture<>(), new AtomicBoolean());
+		this.pendingMessages.add(pendingMessage);
+		if (!isRunning() && withdraw(pendingMessage)) {
+			// Stopped in between: the queue might have been drained already
+			throw new MessageDeliveryException(message, "The group commit is not running");
+		}
+		try {
+			try {
+				pendingMessage.committed().get(this.commitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+			}
+			catch (TimeoutException ex) {
+				if (withdraw(pendingMessage)) {
+					throw new MessageDeliveryException(message, "Group commit has not started in time", ex);
+				}
+				// Already in a group transaction: the caller must not be told it failed when it might be committed
+				pendingMessage.committed().get();
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			withdraw(pendingMessage);
+			throw new MessageDeliveryException(message, "Interrupted while waiting for the group commit", ex);
+		}
+		catch (ExecutionException ex) {
+			if (ex.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			throw new MessagingException(message, "Group commit has failed", ex.getCause());
+		}
+	}
+
+	// A message is either withdrawn by its caller or claimed by the committer, never both
+	private boolean withdraw(PendingMessage pendingMessage) {
+		if (pendingMessage.claim()) {
+			this.pendingMessages.remove(pendingMessage);
+			return true;
+		}
+		return false;
+	}
+
+	private void commitLoop() {
+		while (!Thread.currentThread().isInterrupted()) {
+			try {
+				List<PendingMessage> batch = nextBatch();
+				if (!batch.isEmpty()) {
+					commit(batch);
+				}
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private List<PendingMessage> nextBatch() throws InterruptedException {
+		List<PendingMessage> batch = new ArrayList<>();
+		batch.add(this.pendingMessages.take());
+		this.pendingMessages.drainTo(batch, this.maxBatchSize - 1);
+		long deadline = System.nanoTime() + this.window.toNanos();
+		try {
+			while (batch.size() < this.maxBatchSize) {
+				PendingMessage next = this.pendingMessages.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+				if (next == null) {
+					break;
+				}
+				batch.add(next);
+			}
+		}
+		catch (InterruptedException ex) {
+			// Stopping: the messages taken already are committed before the committer exits
+			Thread.currentThread().interrupt();
+		}
+		// The messages withdrawn by their callers on timeout are skipped
+		batch.removeIf((pendingMessage) -> !pendingMessage.claim());
+		return batch;
+	}
+
+	private void commit(List<PendingMessage> batch) {
+		MessageChannel outputChannel = getOutputChannel();
+		try {
+			this.transactionTemplate.executeWithoutResult((status) ->
+					batch.forEach((pendingMessage) -> outputChannel.send(pendingMessage.message())));
+			batch.forEach((pendingMessage) -> pendingMessage.committed().complete(null));
+		}
+		catch (Exception batchFailure) {
+			// One bad message must not fail the whole group: commit the rest individually.
+			// The rolled back group may have left state (e.g. generated ids) in the messages, so they are re-created
+			for (PendingMessage pendingMessage : batch) {
+				try {
+					Message<?> retryMessage = this.retryMessageFunction.apply(pendingMessage.message());
+					this.transactionTemplate.executeWithoutResult((status) -> outputChannel.send(retryMessage));
+					pendingMessage.committed().complete(null);
+				}
+				catch (Exception ex) {
+					pendingMessage.committed().completeExceptionally(ex);
+				}
+			}
+		}
+	}
+
+	private record PendingMessage(Message<?> message, CompletableFuture<Void> committed, AtomicBoolean claimed) {
+
+		boolean claim() {
+			return this.claimed.compareAndSet(false, true);
+		}
+
+	}
+
+}
@@ -1,16 +1,35 @@
 package org.springframework.integration.microservices.outbox;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
 import javax.sql.DataSource;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityManager;
+import reactor.core.publisher.Mono;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.integration.annotation.Gateway;
 import org.springframework.integration.annotation.MessagingGateway;
+import org.springframework.integration.core.GenericSelector;
+import org.springframework.integration.dsl.Channels;
+import org.springframework.integration.dsl.IntegrationFlow;
 import org.springframework.integration.dsl.IntegrationFlowAdapter;
 import org.springframework.integration.dsl.IntegrationFlowDefinition;
+import org.springframework.integration.dsl.QueueChannelSpec;
+import org.springframework.integration.jdbc.lock.DefaultLockRepository;
+import org.springframework.integration.jdbc.lock.JdbcLockRegistry;
+import org.springframework.integration.jdbc.lock.LockRepository;
 import org.springframework.integration.jdbc.store.JdbcChannelMessageStore;
 import org.springframework.integration.jdbc.store.channel.H2ChannelMessageStoreQueryProvider;
 import org.springframework.integration.jpa.dsl.Jpa;
@@ -21,8 +40,19 @@ import org.springframework.integration.kafka.dsl.Kafka;
 import org.springframework.integration.kafka.dsl.KafkaProducerMessageHandlerSpec;
 import org.springframework.integration.kafka.outbound.KafkaProducerMessageHandler;
 import org.springframework.integration.store.ChannelMessageStore;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.support.locks.LockRegistry;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
 import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 @SpringBootApplication
 public class OutboxApplication {
@@ -42,25 +72,169 @@ public class OutboxApplication {
 	}
 
 	@Bean
-	JdbcChannelMessageStore jdbcChannelMessageStore(DataSource dataSource) {
+	OutboxMessageCodec outboxMessageCodec(ResourceLoader resourceLoader,
+			@Value("${outbox.codec.compression-threshold:0}") int compressionThreshold,
+			@Value("${outbox.codec.allowed-patterns:}") String[] allowedPatterns) {
+
+		OutboxMessageCodec outboxMessageCodec = new OutboxMessageCodec(resourceLoader.getClassLoader());
+		outboxMessageCodec.setCompressionThreshold(compressionThreshold);
+		outboxMessageCodec.addAllowedPatterns(allowedPatterns);
+		return outboxMessageCodec;
+	}
+
+	@Bean
+	JdbcChannelMessageStore jdbcChannelMessageStore(DataSource dataSource, OutboxMessageCodec outboxMessageCodec,
+			@Value("${outbox.codec.compact:false}") boolean compactCodec) {
+
 		JdbcChannelMessageStore jdbcChannelMessageStore = new JdbcChannelMessageStore(dataSource);
 		jdbcChannelMessageStore.setChannelMessageStoreQueryProvider(new H2ChannelMessageStoreQueryProvider());
+		if (compactCodec) {
+			jdbcChannelMessageStore.setSerializer(outboxMessageCodec);
+			jdbcChannelMessageStore.setDeserializer(outboxMessageCodec);
+		}
 		return jdbcChannelMessageStore;
 	}
 
 	@Bean
 	Outbox outbox(JpaOutboundGateway ordersJpaHandler, KafkaProducerMessageHandler<?, ?> kafkaMessageHandler,
-			ChannelMessageStore channelMessageStore) {
+			ChannelMessageStore channelMessageStore, OutboxBatchRelay outboxBatchRelay, OutboxMonitor outboxMonitor,
+			@Value("${outbox.relay.batch-size:1}") int batchSize,
+			@Value("${outbox.relay.partitions:1}") int partitions,
+			@Value("${outbox.relay.wake-up:false}") boolean wakeUp,
+			PlatformTransactionManager transactionManager,
+			@Value("${outbox.group-commit.batch-size:1}") int groupCommitBatchSize,
+			@Value("${outbox.group-commit.window:0}") long groupCommitWindow) {
+
+		Outbox outbox = new Outbox(ordersJpaHandler, kafkaMessageHandler, channelMessageStore);
+		outbox.setBatchRelay(batchSize > 1 || partitions > 1 || wakeUp);
+		outbox.setPartitions(partitions);
+		outbox.setPartitionKeyFunction((message) -> ((ShoppingOrder) message.getPayload()).getId());
+		outbox.setRelayWakeUp(outboxBatchRelay::wakeUp);
+		outbox.setRelayed(outboxMonitor::relayed);
+		outbox.setAdmission(outboxMonitor::admit);
+		if (groupCommitBatchSize > 1) {
+			GroupCommitMessageHandler groupCommitHandler = new GroupCommitMessageHandler(transactionManager);
+			groupCommitHandler.setMaxBatchSize(groupCommitBatchSize);
+			groupCommitHandler.setWindow(Duration.ofMillis(groupCommitWindow));
+			groupCommitHandler.setRetryMessageFunction(OutboxApplication::withFreshOrder);
+			outbox.setGroupCommitHandler(groupCommitHandler);
+		}
+		return outbox;
+	}
 
-		return new Outbox(ordersJpaHandler, kafkaMessageHandler, channelMessageStore);
+	// An order from a rolled back transaction has a generated id: it would be a detached entity for the persist
+	static Message<?> withFreshOrder(Message<?> message) {
+		ShoppingOrder order = (ShoppingOrder) message.getPayload();
+		ShoppingOrder freshOrder = new ShoppingOrder();
+		freshOrder.setName(order.getName());
+		freshOrder.setAmount(order.getAmount());
+		return MessageBuilder.withPayload(freshOrder)
+				.copyHeaders(message.getHeaders())
+				.build();
 	}
 
-	@MessagingGateway
+	@Bean
+	OutboxMonitor outboxMonitor(DataSource dataSource,
+			@Value("${outbox.relay.partitions:1}") int partitions,
+			@Value("${outbox.backpressure.high-water-mark:0}") long highWaterMark,
+			@Value("${outbox.backpressure.max-wait:0}") long maxWait,
+			@Value("${outbox.compaction.threshold:10000}") long compactionThreshold) {
+
+		OutboxMonitor outboxMonitor = new OutboxMonitor(dataSource, Outbox.outboxGroups(partitions));
+		outboxMonitor.setHighWaterMark(highWaterMark);
+		outboxMonitor.setMaxWait(Duration.ofMillis(maxWait));
+		outboxMonitor.setCompactionThreshold(compactionThreshold);
+		return outboxMonitor;
+	}
+
+	@Bean
+	ThreadPoolTaskExecutor outboxGatewayExecutor(@Value("${outbox.gateway.pool-size:16}") int poolSize,
+			@Value("${outbox.gateway.queue-capacity:10000}") int queueCapacity) {
+
+		ThreadPoolTaskExecutor outboxGatewayExecutor = new ThreadPoolTaskExecutor();
+		outboxGatewayExecutor.setCorePoolSize(poolSize);
+		outboxGatewayExecutor.setMaxPoolSize(poolSize);
+		outboxGatewayExecutor.setQueueCapacity(queueCapacity);
+		outboxGatewayExecutor.setThreadNamePrefix("outbox-gateway-");
+		return outboxGatewayExecutor;
+	}
+
+	@Bean
+	DefaultLockRepository outboxLockRepository(DataSource dataSource) {
+		DefaultLockRepository lockRepository = new DefaultLockRepository(dataSource);
+		lockRepository.setTimeToLive(60_000);
+		return lockRepository;
+	}
+
+	@Bean
+	JdbcLockRegistry outboxLockRegistry(LockRepository outboxLockRepository) {
+		return new JdbcLockRegistry(outboxLockRepository);
+	}
+
+	@Bean
+	OutboxBatchRelay outboxBatchRelay(DataSource dataSource, PlatformTransactionManager transactionManager,
+			KafkaTemplate<?, ?> kafkaTemplate, LockRegistry outboxLockRegistry, MeterRegistry meterRegistry,
+			OutboxMessageCodec outboxMessageCodec,
+			@Value("${outbox.codec.compact:false}") boolean compactCodec,
+			@Value("${outbox.relay.batch-size:1}") int batchSize,
+			@Value("${outbox.relay.partitions:1}") int partitions,
+			@Value("${outbox.relay.max-idle-wait:10000}") long maxIdleWait) {
+
+		OutboxBatchRelay outboxBatchRelay =
+				new OutboxBatchRelay(dataSource, transactionManager, kafkaTemplate, "orders",
+						Outbox.outboxGroups(partitions));
+		outboxBatchRelay.setBatchSize(batchSize);
+		outboxBatchRelay.setLockRegistry(outboxLockRegistry);
+		ExponentialBackOff idleBackOff = new ExponentialBackOff(50, 2);
+		idleBackOff.setMaxInterval(maxIdleWait);
+		outboxBatchRelay.setIdleBackOff(idleBackOff);
+		outboxBatchRelay.setMeterRegistry(meterRegistry);
+		if (compactCodec) {
+			outboxBatchRelay.setDeserializer(outboxMessageCodec);
+		}
+		return outboxBatchRelay;
+	}
+
+	@Bean
+	ThreadPoolTaskExecutor outboxRelayExecutor(@Value("${outbox.relay.concurrency:1}") int concurrency) {
+		ThreadPoolTaskExecutor outboxRelayExecutor = new ThreadPoolTaskExecutor();
+		outboxRelayExecutor.setCorePoolSize(concurrency);
+		outboxRelayExecutor.setMaxPoolSize(concurrency);
+		outboxRelayExecutor.setQueueCapacity(0);
+		outboxRelayExecutor.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+		outboxRelayExecutor.setThreadNamePrefix("outbox-relay-");
+		return outboxRelayExecutor;
+	}
+
+	@Bean
+	IntegrationFlow outboxBatchRelayFlow(OutboxBatchRelay outboxBatchRelay, Outbox outbox, OutboxMonitor outboxMonitor,
+			ThreadPoolTaskExecutor outboxRelayExecutor) {
+
+		return IntegrationFlow.from(outboxBatchRelay,
+						e -> e.poller(poller -> poller.fixedDelay(100)
+										.maxMessagesPerPoll(-1)
+										.taskExecutor(outboxRelayExecutor))
+								.autoStartup(outbox.isBatchRelay()))
+				.handle(Integer.class, (relayed, headers) -> {
+					outboxMonitor.relayed(relayed);
+					return null;
+				})
+				.get();
+	}
+
+	@MessagingGateway(asyncExecutor = "outboxGatewayExecutor")
 	public interface OrderGateway {
 
 		@Gateway(requestChannel = "outbox.input")
 		void placeOrder(ShoppingOrder order);
 
+		@Gateway(requestChannel = "outbox.input")
+		CompletableFuture<Void> placeOrderAsync(ShoppingOrder order);
+
+		default Mono<Void> placeOrderReactive(ShoppingOrder order) {
+			return Mono.fromFuture(() -> placeOrderAsync(order));
+		}
+
 	}
 
 	public static class Outbox extends IntegrationFlowAdapter {
@@ -71,6 +245,19 @@ public class OutboxApplication {
 
 		private final ChannelMessageStore channelMessageStore;
 
+		private boolean batchRelay;
+
+		private int partitions = 1;
+
+		private Function<Message<?>, Object> partitionKeyFunction;
+
+		private Runnable relayWakeUp;
+
+		private IntConsumer relayed;
+
+		private GenericSelector<Message<?>> admission;
+
+		private MessageHandler groupCommitHandler;
 
 		public Outbox(MessageHandler businessDataHandler, MessageHandler messagePublisherHandler,
 				ChannelMessageStore channelMessageStore) {
@@ -80,16 +267,157 @@ public class OutboxApplication {
 			this.channelMessageStore = channelMessageStore;
 		}
 
+		public void setBatchRelay(boolean batchRelay) {
+			this.batchRelay = batchRelay;
+		}
+
+		public boolean isBatchRelay() {
+			return this.batchRelay;
+		}
+
+		public void setPartitions(int partitions) {
+			this.partitions = partitions;
+		}
+
+		public void setPartitionKeyFunction(Function<Message<?>, Object> partitionKeyFunction) {
+			this.partitionKeyFunction = partitionKeyFunction;
+		}
+
+		public void setRelayWakeUp(Runnable relayWakeUp) {
+			this.relayWakeUp = relayWakeUp;
+		}
+
+		public void setRelayed(IntConsumer relayed) {
+			this.relayed = relayed;
+		}
+
+		public void setAdmission(GenericSelector<Message<?>> admission) {
+			this.admission = admission;
+		}
+
+		public void setGroupCommitHandler(MessageHandler groupCommitHandler) {
+			this.groupCommitHandler = groupCommitHandler;
+		}
+
 		@Override
 		protected IntegrationFlowDefinition<?> buildFlow() {
-			return from("outbox.input")
+			IntegrationFlowDefinition<?> outboxInput = from("outbox.input");
+			if (this.admission != null) {
+				outboxInput = outboxInput.filter(Message.class, (message) -> this.admission.accept(message));
+			}
+			if (this.groupCommitHandler != null) {
+				outboxInput = outboxInput.handle(this.groupCommitHandler);
+			}
+			return outboxInput
 					.routeToRecipients(routes -> routes
 							.transactional()
 							.recipientFlow(businessData -> businessData.handle(this.businessDataHandler))
-							.recipientFlow(messagingMiddleware -> messagingMiddleware
-									.channel(c -> c.queue(this.channelMessageStore, "outbox"))
-									.handle(this.messagePublisherHandler,
-											e -> e.poller(poller -> poller.fixedDelay(1000).transactional()))));
+							.recipientFlow(this::messagingMiddleware));
+		}
+
+		private void messagingMiddleware(IntegrationFlowDefinition<?> messagingMiddleware) {
+			if (this.partitionKeyFunction != null) {
+				messagingMiddleware.enrichHeaders(headers -> headers
+						.headerFunction(KafkaHeaders.KEY,
+								(message) -> String.valueOf(this.partitionKeyFunction.apply(message))));
+			}
+			if (this.partitions > 1) {
+				List<String> outboxGroups = outboxGroups(this.partitions);
+				messagingMiddleware.route(Message.class,
+						(message) -> Math.floorMod(message.getHeaders().get(KafkaHeaders.KEY).hashCode(), this.partitions),
+						(routeMapping) -> IntStream.range(0, this.partitions)
+								.forEach((partition) -> routeMapping.subFlowMapping(partition,
+										(partitionFlow) -> partitionFlow.channel(c ->
+												outboxQueue(c, outboxGroups.get(partition))))));
+				return;
+			}
+			messagingMiddleware.channel(c -> outboxQueue(c, "outbox"));
+			if (!this.batchRelay) {
+				messagingMiddleware.handle(this.messagePublisherHandler,
+						e -> e.poller(poller -> poller.fixedDelay(1000).transactional()));
+			}
+		}
+
+		private QueueChannelSpec outboxQueue(Channels channels, String outboxGroup) {
+			QueueChannelSpec outboxQueue = channels.queue(this.channelMessageStore, outboxGroup);
+			if (this.batchRelay && this.relayWakeUp != null) {
+				outboxQueue.interceptor(new RelayWakeUpInterceptor(this.relayWakeUp));
+			}
+			if (!this.batchRelay && this.relayed != null) {
+				outboxQueue.interceptor(new RelayedInterceptor(this.relayed));
+			}
+			return outboxQueue;
+		}
+
+		public static List<String> outboxGroups(int partitions) {
+			if (partitions > 1) {
+				return IntStream.range(0, partitions)
+						.mapToObj((partition) -> "outbox-" + partition)
+						.toList();
+			}
+			return List.of("outbox");
+		}
+
+	}
+
+	// The QueueChannel consumer counterpart of the OutboxBatchRelay results: counts the messages published in the
+	// transactional poll when it is committed
+	private static class RelayedInterceptor implements ChannelInterceptor {
+
+		private final IntConsumer relayed;
+
+		RelayedInterceptor(IntConsumer relayed) {
+			this.relayed = relayed;
+		}
+
+		@Override
+		public void afterReceiveCompletion(Message<?> message, MessageChannel channel, Exception ex) {
+			if (message == null || ex != null) {
+				return;
+			}
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+					@Override
+					public void afterCommit() {
+						RelayedInterceptor.this.relayed.accept(1);
+					}
+
+				});
+			}
+			else {
+				this.relayed.accept(1);
+			}
+		}
+
+	}
+
+	private static class RelayWakeUpInterceptor implements ChannelInterceptor {
+
+		private final Runnable relayWakeUp;
+
+		RelayWakeUpInterceptor(Runnable relayWakeUp) {
+			this.relayWakeUp = relayWakeUp;
+		}
+
+		@Override
+		public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+			if (!sent) {
+				return;
+			}
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+
+					@Override
+					public void afterCommit() {
+						RelayWakeUpInterceptor.this.relayWakeUp.run();
+					}
+
+				});
+			}
+			else {
+				this.relayWakeUp.run();
+			}
 		}
 
 	}
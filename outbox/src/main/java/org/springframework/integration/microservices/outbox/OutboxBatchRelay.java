@@ -0,0 +1,278 @@
+package org.springframework.integration.microservices.outbox;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.support.DeserializingConverter;
+import org.springframework.integration.core.MessageSource;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.support.locks.DefaultLockRegistry;
+import org.springframework.integration.support.locks.LockRegistry;
+import org.springframework.integration.util.UUIDConverter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.backoff.BackOff;
+import org.springframework.util.backoff.BackOffExecution;
+
+public class OutboxBatchRelay implements MessageSource<Integer> {
+
+	private static final String CLAIM_QUERY = """
+			SELECT MESSAGE_ID, MESSAGE_BYTES FROM INT_CHANNEL_MESSAGE
+			WHERE GROUP_KEY = :groupKey AND REGION = :region
+			ORDER BY CREATED_DATE, MESSAGE_SEQUENCE
+			LIMIT :batchSize FOR UPDATE""";
+
+	private static final String DELETE_QUERY = """
+			DELETE FROM INT_CHANNEL_MESSAGE
+			WHERE GROUP_KEY = :groupKey AND REGION = :region AND MESSAGE_ID IN (:messageIds)""";
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final KafkaTemplate<?, ?> kafkaTemplate;
+
+	private final List<String> groupKeys;
+
+	private final String topic;
+
+	private final AtomicInteger nextGroup = new AtomicInteger();
+
+	private final ReentrantLock wakeUpLock = new ReentrantLock();
+
+	private final Condition wokenUp = this.wakeUpLock.newCondition();
+
+	// Every relay thread backs off on its own, so a busy thread does not reset the idle wait of the others
+	private final ThreadLocal<BackOffExecution> idleBackOffExecution = new ThreadLocal<>();
+
+	private volatile long wakeUps;
+
+	private Converter<byte[], Object> deserializer = new DeserializingConverter();
+
+	private String region = "DEFAULT";
+
+	private int batchSize = 100;
+
+	private Duration sendTimeout = Duration.ofSeconds(30);
+
+	private LockRegistry lockRegistry = new DefaultLockRegistry();
+
+	private volatile BackOff idleBackOff;
+
+	private Timer relayLatency;
+
+	public OutboxBatchRelay(DataSource dataSource, PlatformTransactionManager transactionManager,
+			KafkaTemplate<?, ?> kafkaTemplate, String topic, List<?> groupIds) {
+
+		this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.kafkaTemplate = kafkaTemplate;
+		this.groupKeys =
+				groupIds.stream()
+						.map((groupId) -> UUIDConverter.getUUID(groupId).toString())
+						.toList();
+		this.topic = topic;
+	}
+
+	public void setRegion(String region) {
+		this.region = region;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	public void setSendTimeout(Duration sendTimeout) {
+		this.sendTimeout = sendTimeout;
+	}
+
+	public void setLockRegistry(LockRegistry lockRegistry) {
+		this.lockRegistry = lockRegistry;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void setDeserializer(Deserializer<? extends Message<?>> deserializer) {
+		this.deserializer = new DeserializingConverter((Deserializer) deserializer);
+	}
+
+	public void setIdleBackOff(BackOff idleBackOff) {
+		this.idleBackOff = idleBackOff;
+	}
+
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		this.relayLatency =
+				Timer.builder("outbox.relay.latency")
+						.description("Time from an outbox message creation to its Kafka ack")
+						.publishPercentiles(0.5, 0.99)
+						.publishPercentileHistogram()
+						.register(meterRegistry);
+	}
+
+	public void wakeUp() {
+		this.wakeUpLock.lock();
+		try {
+			this.wakeUps++;
+			this.wokenUp.signalAll();
+		}
+		finally {
+			this.wakeUpLock.unlock();
+		}
+	}
+
+	public boolean isAwaitingWakeUp() {
+		this.wakeUpLock.lock();
+		try {
+			return this.wakeUpLock.hasWaiters(this.wokenUp);
+		}
+		finally {
+			this.wakeUpLock.unlock();
+		}
+	}
+
+	@Override
+	public Message<Integer> receive() {
+		// Captured before the relay, so a wake-up for a commit in between is not missed
+		long wakeUpsBefore = this.wakeUps;
+		Message<Integer> relayed = relayNextBatch();
+		if (relayed != null) {
+			this.idleBackOffExecution.remove();
+		}
+		else if (awaitWakeUp(wakeUpsBefore)) {
+			relayed = relayNextBatch();
+		}
+		return relayed;
+	}
+
+	private boolean awaitWakeUp(long wakeUpsBefore) {
+		if (this.idleBackOff == null) {
+			return false;
+		}
+		BackOffExecution backOffExecution = this.idleBackOffExecution.get();
+		if (backOffExecution == null) {
+			backOffExecution = this.idleBackOff.start();
+			this.idleBackOffExecution.set(backOffExecution);
+		}
+		long idleWait = backOffExecution.nextBackOff();
+		if (idleWait == BackOffExecution.STOP) {
+			return false;
+		}
+		long remaining = TimeUnit.MILLISECONDS.toNanos(idleWait);
+		this.wakeUpLock.lock();
+		try {
+			while (this.wakeUps == wakeUpsBefore) {
+				if (remaining <= 0) {
+					return false;
+				}
+				remaining = this.wokenUp.awaitNanos(remaining);
+			}
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		finally {
+			this.wakeUpLock.unlock();
+		}
+		this.idleBackOffExecution.remove();
+		return true;
+	}
+
+	private Message<Integer> relayNextBatch() {
+		int partitions = this.groupKeys.size();
+		int firstPartition = Math.floorMod(this.nextGroup.getAndIncrement(), partitions);
+		for (int i = 0; i < partitions; i++) {
+			String groupKey = this.groupKeys.get((firstPartition + i) % partitions);
+			Lock partitionLock = this.lockRegistry.obtain(groupKey);
+			if (partitionLock.tryLock()) {
+				try {
+					Integer relayed = this.transactionTemplate.execute((status) -> relayBatch(groupKey));
+					if (relayed != null && relayed > 0) {
+						return new GenericMessage<>(relayed);
+					}
+				}
+				finally {
+					partitionLock.unlock();
+				}
+			}
+		}
+		return null;
+	}
+
+	private int relayBatch(String groupKey) {
+		MapSqlParameterSource parameters =
+				new MapSqlParameterSource("groupKey", groupKey)
+						.addValue("region", this.region)
+						.addValue("batchSize", this.batchSize);
+
+		List<Map.Entry<String, Message<?>>> claimedRows =
+				this.jdbcTemplate.query(CLAIM_QUERY, parameters,
+						(resultSet, rowNum) ->
+								Map.entry(resultSet.getString("MESSAGE_ID"),
+										(Message<?>) this.deserializer.convert(resultSet.getBytes("MESSAGE_BYTES"))));
+
+		if (claimedRows.isEmpty()) {
+			return 0;
+		}
+
+		CompletableFuture<?>[] acks =
+				claimedRows.stream()
+						.map(Map.Entry::getValue)
+						.map(this::publish)
+						.toArray(CompletableFuture[]::new);
+
+		try {
+			CompletableFuture.allOf(acks).get(this.sendTimeout.toMillis(), TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new MessagingException("Interrupted while waiting for outbox batch acks", ex);
+		}
+		catch (ExecutionException | TimeoutException ex) {
+			throw new MessagingException("Failed to relay outbox batch of " + claimedRows.size() + " messages", ex);
+		}
+
+		parameters.addValue("messageIds", claimedRows.stream().map(Map.Entry::getKey).toList());
+		this.jdbcTemplate.update(DELETE_QUERY, parameters);
+
+		return claimedRows.size();
+	}
+
+	private CompletableFuture<?> publish(Message<?> message) {
+		CompletableFuture<?> ack =
+				this.kafkaTemplate.send(
+						MessageBuilder.fromMessage(message)
+								.setHeader(KafkaHeaders.TOPIC, this.topic)
+								.build());
+
+		Long timestamp = message.getHeaders().getTimestamp();
+		if (this.relayLatency != null && timestamp != null) {
+			ack = ack.thenRun(() ->
+					this.relayLatency.record(System.currentTimeMillis() - timestamp, TimeUnit.MILLISECONDS));
+		}
+		return ack;
+	}
+
+}
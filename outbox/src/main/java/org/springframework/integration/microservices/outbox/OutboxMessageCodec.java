@@ -0,0 +1,261 @@
+package org.springframework.integration.microservices.outbox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.core.serializer.Deserializer;
+import org.springframework.core.serializer.Serializer;
+import org.springframework.core.serializer.support.SerializationFailedException;
+import org.springframework.integration.IntegrationMessageHeaderAccessor;
+import org.springframework.integration.support.MutableMessage;
+import org.springframework.integration.support.converter.AllowListDeserializingConverter;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.util.StreamUtils;
+
+public class OutboxMessageCodec implements Serializer<Message<?>>, Deserializer<Message<?>> {
+
+	private static final int FORMAT_VERSION = 1;
+
+	private static final int JAVA_SERIALIZATION_MAGIC = 0xAC;
+
+	private static final int COMPRESSED = 0x01;
+
+	private static final List<String> COMMON_HEADERS =
+			List.of(MessageHeaders.ID,
+					MessageHeaders.TIMESTAMP,
+					MessageHeaders.CONTENT_TYPE,
+					KafkaHeaders.KEY,
+					IntegrationMessageHeaderAccessor.CORRELATION_ID,
+					IntegrationMessageHeaderAccessor.SEQUENCE_NUMBER,
+					IntegrationMessageHeaderAccessor.SEQUENCE_SIZE,
+					IntegrationMessageHeaderAccessor.PRIORITY);
+
+	private static final int CUSTOM_HEADER = 0xFF;
+
+	private static final int NULL = 0;
+
+	private static final int UUID_VALUE = 1;
+
+	private static final int LONG_VALUE = 2;
+
+	private static final int INTEGER_VALUE = 3;
+
+	private static final int STRING_VALUE = 4;
+
+	private static final int SHOPPING_ORDER_VALUE = 5;
+
+	private static final int SERIALIZABLE_VALUE = 0x7F;
+
+	// Array classes are resolved separately from their elements, which are checked on their own
+	private static final String[] DEFAULT_ALLOWED_PATTERNS = {
+			"java.lang.*",
+			"java.util.*",
+			"java.math.*",
+			"java.time.*",
+			"[*",
+			"org.springframework.messaging.*",
+			"org.springframework.integration.support.*",
+			"org.springframework.integration.message.*",
+			ShoppingOrder.class.getPackageName() + ".*"
+	};
+
+	private final AllowListDeserializingConverter deserializingConverter;
+
+	private int compressionThreshold;
+
+	public OutboxMessageCodec(ClassLoader classLoader) {
+		this.deserializingConverter = new AllowListDeserializingConverter(classLoader);
+		this.deserializingConverter.addAllowedPatterns(DEFAULT_ALLOWED_PATTERNS);
+	}
+
+	public void setCompressionThreshold(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public void addAllowedPatterns(String... patterns) {
+		this.deserializingConverter.addAllowedPatterns(patterns);
+	}
+
+	@Override
+	public void serialize(Message<?> message, OutputStream outputStream) throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+		DataOutputStream data = new DataOutputStream(body);
+		writeHeaders(message.getHeaders(), data);
+		writeValue(message.getPayload(), data);
+		data.flush();
+
+		boolean compress = this.compressionThreshold > 0 && body.size() >= this.compressionThreshold;
+		outputStream.write(FORMAT_VERSION);
+		outputStream.write(compress ? COMPRESSED : 0);
+		if (compress) {
+			Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try (OutputStream compressed = new DeflaterOutputStream(StreamUtils.nonClosing(outputStream), deflater)) {
+				body.writeTo(compressed);
+			}
+			finally {
+				deflater.end();
+			}
+		}
+		else {
+			body.writeTo(outputStream);
+		}
+	}
+
+	@Override
+	public Message<?> deserialize(InputStream inputStream) throws IOException {
+		int version = inputStream.read();
+		if (version == JAVA_SERIALIZATION_MAGIC) {
+			InputStream javaSerialized =
+					new SequenceInputStream(new ByteArrayInputStream(new byte[] { (byte) version }), inputStream);
+			return (Message<?>) readObject(StreamUtils.copyToByteArray(javaSerialized));
+		}
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported outbox message format: " + version);
+		}
+		int flags = inputStream.read();
+		DataInputStream data =
+				new DataInputStream((flags & COMPRESSED) != 0 ? new InflaterInputStream(inputStream) : inputStream);
+		Map<String, Object> headers = readHeaders(data);
+		Object payload = readValue(data);
+		return new MutableMessage<>(payload, headers);
+	}
+
+	private static void writeHeaders(MessageHeaders headers, DataOutputStream data) throws IOException {
+		Map<String, Object> headersToWrite = new HashMap<>(headers);
+		headersToWrite.values().removeIf((value) -> value != null && !(value instanceof Serializable));
+		data.writeShort(headersToWrite.size());
+		for (Map.Entry<String, Object> header : headersToWrite.entrySet()) {
+			int headerIndex = COMMON_HEADERS.indexOf(header.getKey());
+			if (headerIndex >= 0) {
+				data.writeByte(headerIndex);
+			}
+			else {
+				data.writeByte(CUSTOM_HEADER);
+				writeString(header.getKey(), data);
+			}
+			writeValue(header.getValue(), data);
+		}
+	}
+
+	private Map<String, Object> readHeaders(DataInputStream data) throws IOException {
+		int headersCount = data.readUnsignedShort();
+		Map<String, Object> headers = new HashMap<>(headersCount * 2);
+		for (int i = 0; i < headersCount; i++) {
+			int headerIndex = data.readUnsignedByte();
+			String headerName = headerIndex == CUSTOM_HEADER ? readString(data) : COMMON_HEADERS.get(headerIndex);
+			headers.put(headerName, readValue(data));
+		}
+		return headers;
+	}
+
+	private static void writeValue(Object value, DataOutputStream data) throws IOException {
+		if (value == null) {
+			data.writeByte(NULL);
+		}
+		else if (value instanceof UUID uuid) {
+			data.writeByte(UUID_VALUE);
+			data.writeLong(uuid.getMostSignificantBits());
+			data.writeLong(uuid.getLeastSignificantBits());
+		}
+		else if (value instanceof Long longValue) {
+			data.writeByte(LONG_VALUE);
+			data.writeLong(longValue);
+		}
+		else if (value instanceof Integer intValue) {
+			data.writeByte(INTEGER_VALUE);
+			data.writeInt(intValue);
+		}
+		else if (value instanceof String string) {
+			data.writeByte(STRING_VALUE);
+			writeString(string, data);
+		}
+		else if (value instanceof ShoppingOrder order && order.getClass() == ShoppingOrder.class
+				&& order.getName() != null && order.getAmount() != null) {
+
+			data.writeByte(SHOPPING_ORDER_VALUE);
+			data.writeLong(order.getId());
+			writeString(order.getName(), data);
+			BigDecimal amount = order.getAmount();
+			data.writeInt(amount.scale());
+			writeBytes(amount.unscaledValue().toByteArray(), data);
+		}
+		else {
+			data.writeByte(SERIALIZABLE_VALUE);
+			ByteArrayOutputStream serialized = new ByteArrayOutputStream(256);
+			try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(serialized)) {
+				objectOutputStream.writeObject(value);
+			}
+			writeBytes(serialized.toByteArray(), data);
+		}
+	}
+
+	private Object readValue(DataInputStream data) throws IOException {
+		int type = data.readUnsignedByte();
+		return switch (type) {
+			case NULL -> null;
+			case UUID_VALUE -> new UUID(data.readLong(), data.readLong());
+			case LONG_VALUE -> data.readLong();
+			case INTEGER_VALUE -> data.readInt();
+			case STRING_VALUE -> readString(data);
+			case SHOPPING_ORDER_VALUE -> {
+				ShoppingOrder order = new ShoppingOrder();
+				order.setId(data.readLong());
+				order.setName(readString(data));
+				int scale = data.readInt();
+				order.setAmount(new BigDecimal(new BigInteger(readBytes(data)), scale));
+				yield order;
+			}
+			case SERIALIZABLE_VALUE -> readObject(readBytes(data));
+			default -> throw new IOException("Unknown outbox message value type: " + type);
+		};
+	}
+
+	private Object readObject(byte[] serialized) throws IOException {
+		try {
+			return this.deserializingConverter.convert(serialized);
+		}
+		catch (SerializationFailedException ex) {
+			throw new IOException("Failed to deserialize outbox message value", ex);
+		}
+	}
+
+	private static void writeString(String string, DataOutputStream data) throws IOException {
+		writeBytes(string.getBytes(StandardCharsets.UTF_8), data);
+	}
+
+	private static String readString(DataInputStream data) throws IOException {
+		return new String(readBytes(data), StandardCharsets.UTF_8);
+	}
+
+	private static void writeBytes(byte[] bytes, DataOutputStream data) throws IOException {
+		data.writeInt(bytes.length);
+		data.write(bytes);
+	}
+
+	private static byte[] readBytes(DataInputStream data) throws IOException {
+		byte[] bytes = new byte[data.readInt()];
+		data.readFully(bytes);
+		return bytes;
+	}
+
+}
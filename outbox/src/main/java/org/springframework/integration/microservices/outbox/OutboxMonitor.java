@@ -0,0 +1,162 @@
+package org.springframework.integration.microservices.outbox;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import org.springframework.integration.MessageRejectedException;
+import org.springframework.integration.util.UUIDConverter;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.messaging.Message;
+
+public class OutboxMonitor implements MeterBinder {
+
+	private static final Log LOGGER = LogFactory.getLog(OutboxMonitor.class);
+
+	private static final String DEPTH_QUERY = """
+			SELECT COUNT(MESSAGE_ID) FROM INT_CHANNEL_MESSAGE
+			WHERE GROUP_KEY IN (:groupKeys) AND REGION = :region""";
+
+	private static final String OLDEST_QUERY = """
+			SELECT MIN(CREATED_DATE) FROM INT_CHANNEL_MESSAGE
+			WHERE GROUP_KEY IN (:groupKeys) AND REGION = :region""";
+
+	private final NamedParameterJdbcTemplate jdbcTemplate;
+
+	private final MapSqlParameterSource groupParameters;
+
+	private final AtomicLong relayedSinceCompaction = new AtomicLong();
+
+	private volatile long highWaterMark;
+
+	private Duration maxWait = Duration.ZERO;
+
+	private Duration depthCacheTimeout = Duration.ofMillis(500);
+
+	private String compactionStatement = "ANALYZE TABLE INT_CHANNEL_MESSAGE";
+
+	private long compactionThreshold = 10_000;
+
+	private Counter published;
+
+	private volatile long depth;
+
+	private volatile long depthQueriedAt;
+
+	public OutboxMonitor(DataSource dataSource, List<?> groupIds) {
+		this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+		this.groupParameters =
+				new MapSqlParameterSource("groupKeys",
+						groupIds.stream()
+								.map((groupId) -> UUIDConverter.getUUID(groupId).toString())
+								.toList())
+						.addValue("region", "DEFAULT");
+	}
+
+	public void setRegion(String region) {
+		this.groupParameters.addValue("region", region);
+	}
+
+	public void setHighWaterMark(long highWaterMark) {
+		this.highWaterMark = highWaterMark;
+	}
+
+	public void setMaxWait(Duration maxWait) {
+		this.maxWait = maxWait;
+	}
+
+	public void setDepthCacheTimeout(Duration depthCacheTimeout) {
+		this.depthCacheTimeout = depthCacheTimeout;
+	}
+
+	public void setCompactionStatement(String compactionStatement) {
+		this.compactionStatement = compactionStatement;
+	}
+
+	public void setCompactionThreshold(long compactionThreshold) {
+		this.compactionThreshold = compactionThreshold;
+	}
+
+	public boolean isBackpressureEnabled() {
+		return this.highWaterMark > 0;
+	}
+
+	@Override
+	public void bindTo(MeterRegistry registry) {
+		Gauge.builder("outbox.depth", this, (monitor) -> monitor.depth(true))
+				.description("The number of messages in the outbox")
+				.register(registry);
+		Gauge.builder("outbox.oldest.age", this, OutboxMonitor::oldestAgeSeconds)
+				.description("The age of the oldest message in the outbox")
+				.baseUnit("seconds")
+				.register(registry);
+		this.published =
+				Counter.builder("outbox.published")
+						.description("The number of messages relayed from the outbox")
+						.register(registry);
+	}
+
+	public long depth(boolean fresh) {
+		long now = System.currentTimeMillis();
+		if (fresh || now - this.depthQueriedAt > this.depthCacheTimeout.toMillis()) {
+			Long count = this.jdbcTemplate.queryForObject(DEPTH_QUERY, this.groupParameters, Long.class);
+			this.depth = count != null ? count : 0;
+			this.depthQueriedAt = now;
+		}
+		return this.depth;
+	}
+
+	private double oldestAgeSeconds() {
+		Long oldest = this.jdbcTemplate.queryForObject(OLDEST_QUERY, this.groupParameters, Long.class);
+		return oldest != null ? (System.currentTimeMillis() - oldest) / 1000.0 : 0;
+	}
+
+	public boolean admit(Message<?> message) {
+		long highWaterMark = this.highWaterMark;
+		if (highWaterMark <= 0) {
+			return true;
+		}
+		long deadline = System.currentTimeMillis() + this.maxWait.toMillis();
+		while (depth(false) >= highWaterMark) {
+			long remaining = deadline - System.currentTimeMillis();
+			if (remaining <= 0) {
+				throw new MessageRejectedException(message,
+						"The outbox has reached its high-water mark of " + highWaterMark + " messages");
+			}
+			try {
+				Thread.sleep(Math.min(remaining, this.depthCacheTimeout.toMillis()));
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new MessageRejectedException(message, "Interrupted while waiting for the outbox to drain", ex);
+			}
+		}
+		return true;
+	}
+
+	public void relayed(int count) {
+		if (this.published != null) {
+			this.published.increment(count);
+		}
+		// Waiting callers see the drain before the cached depth expires
+		this.depth = Math.max(0, this.depth - count);
+		if (this.compactionThreshold > 0
+				&& this.relayedSinceCompaction.addAndGet(count) >= this.compactionThreshold) {
+
+			this.relayedSinceCompaction.set(0);
+			LOGGER.info("Compacting outbox table after a drain with: " + this.compactionStatement);
+			this.jdbcTemplate.getJdbcTemplate().execute(this.compactionStatement);
+		}
+	}
+
+}
@@ -1,30 +1,71 @@
 package org.springframework.integration.microservices.outbox;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
 
+import javax.sql.DataSource;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.persistence.EntityManager;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.junit.jupiter.api.Test;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.serializer.support.SerializingConverter;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.jdbc.store.JdbcChannelMessageStore;
+import org.springframework.integration.jpa.outbound.JpaOutboundGateway;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.integration.support.locks.LockRegistry;
+import org.springframework.integration.util.UUIDConverter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.support.GenericMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.backoff.ExponentialBackOff;
+import org.springframework.util.backoff.FixedBackOff;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatException;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+import static org.awaitility.Awaitility.await;
 
-@SpringBootTest
+@SpringBootTest(properties = {
+		"spring.kafka.consumer.auto-offset-reset=earliest",
+		// The relay with the commit wake-ups instead of the default one second poll
+		"outbox.relay.wake-up=true"
+})
 @EmbeddedKafka(bootstrapServersProperty = "spring.kafka.bootstrap-servers")
 @DirtiesContext
 class OutboxApplicationTests {
 
+	private static final Log LOGGER = LogFactory.getLog(OutboxApplicationTests.class);
+
 	@Autowired
 	OutboxApplication.OrderGateway orderGateway;
 
@@ -37,6 +78,42 @@ class OutboxApplicationTests {
 	@Autowired
 	BlockingQueue<ShoppingOrder> consumedOrders;
 
+	@Autowired
+	BlockingQueue<ShoppingOrder> relayedOrders;
+
+	@Autowired
+	JdbcChannelMessageStore jdbcChannelMessageStore;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	KafkaTemplate<?, ?> kafkaTemplate;
+
+	@Autowired
+	ThreadPoolTaskExecutor outboxGatewayExecutor;
+
+	@Autowired
+	LockRegistry outboxLockRegistry;
+
+	@Autowired
+	JpaOutboundGateway ordersJpaHandler;
+
+	@Autowired
+	ApplicationContext applicationContext;
+
+	@Autowired
+	OutboxMonitor outboxMonitor;
+
+	@Autowired
+	MeterRegistry meterRegistry;
+
+	@Autowired
+	OutboxBatchRelay outboxBatchRelay;
+
 	@Test
 	void verifyOutboxPatternOutputs() throws InterruptedException {
 		ShoppingOrder testOrder = new ShoppingOrder();
@@ -63,22 +140,451 @@ class OutboxApplicationTests {
 				.isEqualTo(0);
 	}
 
+	@Test
+	void batchRelayDrainsOutboxInOrder() throws InterruptedException {
+		OutboxBatchRelay outboxBatchRelay =
+				new OutboxBatchRelay(this.dataSource, this.transactionManager, this.kafkaTemplate, "relayedOrders",
+						List.of("test-batch-relay"));
+		outboxBatchRelay.setBatchSize(3);
+
+		for (int i = 0; i < 5; i++) {
+			this.jdbcChannelMessageStore.addMessageToGroup("test-batch-relay", outboxMessage("batch", "order " + i));
+		}
+
+		assertThat(outboxBatchRelay.receive()).extracting(Message::getPayload).isEqualTo(3);
+		assertThat(outboxBatchRelay.receive()).extracting(Message::getPayload).isEqualTo(2);
+		assertThat(outboxBatchRelay.receive()).isNull();
+		assertThat(this.jdbcChannelMessageStore.messageGroupSize("test-batch-relay")).isEqualTo(0);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(this.relayedOrders.poll(10, TimeUnit.SECONDS))
+					.extracting(ShoppingOrder::getName)
+					.isEqualTo("order " + i);
+		}
+	}
+
+	@Test
+	void partitionedRelaySkipsClaimedPartitionsAndKeepsKeyOrder() throws Exception {
+		OutboxBatchRelay outboxBatchRelay =
+				new OutboxBatchRelay(this.dataSource, this.transactionManager, this.kafkaTemplate, "relayedOrders",
+						List.of("test-partition-0", "test-partition-1"));
+		outboxBatchRelay.setBatchSize(10);
+		outboxBatchRelay.setLockRegistry(this.outboxLockRegistry);
+
+		for (int i = 0; i < 3; i++) {
+			this.jdbcChannelMessageStore.addMessageToGroup("test-partition-0",
+					outboxMessage("key-0", "partition 0 order " + i));
+			this.jdbcChannelMessageStore.addMessageToGroup("test-partition-1",
+					outboxMessage("key-1", "partition 1 order " + i));
+		}
+
+		// Another relay owns the first partition: the JdbcLockRegistry lock is held by this test thread
+		Lock claimedPartition = this.outboxLockRegistry.obtain(UUIDConverter.getUUID("test-partition-0").toString());
+		claimedPartition.lock();
+		try {
+			assertThat(CompletableFuture.supplyAsync(outboxBatchRelay::receive).get(10, TimeUnit.SECONDS))
+					.extracting(Message::getPayload)
+					.isEqualTo(3);
+			assertThat(this.jdbcChannelMessageStore.messageGroupSize("test-partition-0")).isEqualTo(3);
+			assertThat(this.jdbcChannelMessageStore.messageGroupSize("test-partition-1")).isEqualTo(0);
+			assertThat(CompletableFuture.supplyAsync(outboxBatchRelay::receive).get(10, TimeUnit.SECONDS)).isNull();
+		}
+		finally {
+			claimedPartition.unlock();
+		}
+
+		assertThat(CompletableFuture.supplyAsync(outboxBatchRelay::receive).get(10, TimeUnit.SECONDS))
+				.extracting(Message::getPayload)
+				.isEqualTo(3);
+		assertThat(this.jdbcChannelMessageStore.messageGroupSize("test-partition-0")).isEqualTo(0);
+
+		List<String> partition0 = new ArrayList<>();
+		List<String> partition1 = new ArrayList<>();
+		for (int i = 0; i < 6; i++) {
+			String name = this.relayedOrders.poll(10, TimeUnit.SECONDS).getName();
+			(name.startsWith("partition 0") ? partition0 : partition1).add(name);
+		}
+		assertThat(partition0).containsExactly("partition 0 order 0", "partition 0 order 1", "partition 0 order 2");
+		assertThat(partition1).containsExactly("partition 1 order 0", "partition 1 order 1", "partition 1 order 2");
+	}
+
+	@Test
+	void relayWakesUpAfterCommit() throws InterruptedException {
+		// The relay does not poll again on its own for a minute: only a commit can wake it up
+		this.outboxBatchRelay.setIdleBackOff(new FixedBackOff(60_000, FixedBackOff.UNLIMITED_ATTEMPTS));
+		try {
+			// The relay thread starts a new back-off after relaying this order
+			this.orderGateway.placeOrder(order("first wake-up order"));
+			assertThat(this.consumedOrders.poll(10, TimeUnit.SECONDS))
+					.extracting(ShoppingOrder::getName)
+					.isEqualTo("first wake-up order");
+			await().until(this.outboxBatchRelay::isAwaitingWakeUp);
+
+			long start = System.nanoTime();
+			this.orderGateway.placeOrder(order("wake-up order"));
+			assertThat(this.consumedOrders.poll(10, TimeUnit.SECONDS))
+					.extracting(ShoppingOrder::getName)
+					.isEqualTo("wake-up order");
+			LOGGER.info("Commit to consumption latency after idle: "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+		}
+		finally {
+			ExponentialBackOff idleBackOff = new ExponentialBackOff(50, 2);
+			idleBackOff.setMaxInterval(10_000);
+			this.outboxBatchRelay.setIdleBackOff(idleBackOff);
+			this.jdbcTemplate.update("DELETE FROM ORDERS WHERE NAME LIKE '%wake-up order'");
+		}
+	}
+
+	@Test
+	void relayWakesUpAllWaitingThreads() throws Exception {
+		OutboxBatchRelay outboxBatchRelay =
+				new OutboxBatchRelay(this.dataSource, this.transactionManager, this.kafkaTemplate, "relayedOrders",
+						List.of("test-wake-up"));
+		outboxBatchRelay.setIdleBackOff(new FixedBackOff(10_000, 1));
+
+		CompletableFuture<Message<Integer>> firstRelay = CompletableFuture.supplyAsync(outboxBatchRelay::receive);
+		CompletableFuture<Message<Integer>> secondRelay = CompletableFuture.supplyAsync(outboxBatchRelay::receive);
+		Thread.sleep(500);
+		assertThat(firstRelay).isNotDone();
+		assertThat(secondRelay).isNotDone();
+
+		this.jdbcChannelMessageStore.addMessageToGroup("test-wake-up", outboxMessage("wake-up", "woken up order"));
+		outboxBatchRelay.wakeUp();
+
+		// Both waiters return long before their back-off, only one of them gets the row
+		Message<Integer> firstRelayed = firstRelay.get(2, TimeUnit.SECONDS);
+		Message<Integer> secondRelayed = secondRelay.get(2, TimeUnit.SECONDS);
+		assertThat(firstRelayed == null ? secondRelayed : firstRelayed)
+				.extracting(Message::getPayload)
+				.isEqualTo(1);
+		assertThat(firstRelayed == null || secondRelayed == null).isTrue();
+		assertThat(this.relayedOrders.poll(10, TimeUnit.SECONDS))
+				.extracting(ShoppingOrder::getName)
+				.isEqualTo("woken up order");
+	}
+
+	@Test
+	void batchRelayClaimsRowsPerBatch() {
+		int rows = 500;
+		double singleMessageRate = drainRate("test-single-drain", 1, rows);
+		double batchRate = drainRate("test-batch-drain", 100, rows);
+
+		LOGGER.info(String.format("Drained %d outbox rows: %.0f rows/sec one by one, %.0f rows/sec in batches of 100",
+				rows, singleMessageRate, batchRate));
+	}
+
+	private double drainRate(String group, int batchSize, int rows) {
+		OutboxBatchRelay outboxBatchRelay =
+				new OutboxBatchRelay(this.dataSource, this.transactionManager, this.kafkaTemplate, "drainedOrders",
+						List.of(group));
+		outboxBatchRelay.setBatchSize(batchSize);
+
+		for (int i = 0; i < rows; i++) {
+			this.jdbcChannelMessageStore.addMessageToGroup(group, outboxMessage(String.valueOf(i), "order " + i));
+		}
+
+		long start = System.nanoTime();
+		int relayed = 0;
+		int transactions = 0;
+		for (Message<Integer> batch = outboxBatchRelay.receive(); batch != null; batch = outboxBatchRelay.receive()) {
+			// Every batch claims as many rows as left, up to the batch size
+			assertThat(batch.getPayload()).isEqualTo(Math.min(batchSize, rows - relayed));
+			relayed += batch.getPayload();
+			transactions++;
+		}
+		long elapsed = System.nanoTime() - start;
+
+		assertThat(relayed).isEqualTo(rows);
+		assertThat(transactions).isEqualTo((rows + batchSize - 1) / batchSize);
+		assertThat(this.jdbcChannelMessageStore.messageGroupSize(group)).isEqualTo(0);
+		return rows * 1e9 / elapsed;
+	}
+
+	@Test
+	void asyncOrderCompletesOnCommitAndFailsOnRollback() throws Exception {
+		this.orderGateway.placeOrderAsync(order("async order")).get(10, TimeUnit.SECONDS);
+
+		assertThat(this.consumedOrders.poll(10, TimeUnit.SECONDS))
+				.extracting(ShoppingOrder::getName)
+				.isEqualTo("async order");
+
+		// No name violates the ORDERS constraint, so the transaction is rolled back
+		assertThat(this.orderGateway.placeOrderAsync(order(null)))
+				.failsWithin(Duration.ofSeconds(10));
+
+		assertThatException()
+				.isThrownBy(() -> this.orderGateway.placeOrderReactive(order(null)).block(Duration.ofSeconds(10)));
+
+		assertThat(this.consumedOrders.poll(1, TimeUnit.SECONDS)).isNull();
+		assertThat(this.jdbcTemplate.update("DELETE FROM ORDERS WHERE NAME = 'async order'")).isEqualTo(1);
+	}
+
+	@Test
+	void asyncGatewayLoad() throws Exception {
+		int orders = 500;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < orders; i++) {
+			this.orderGateway.placeOrder(order("blocking load order"));
+		}
+		double blockingRate = orders * 1e9 / (System.nanoTime() - start);
+
+		start = System.nanoTime();
+		List<CompletableFuture<Void>> placedOrders = new ArrayList<>();
+		for (int i = 0; i < orders; i++) {
+			placedOrders.add(this.orderGateway.placeOrderAsync(order("async load order")));
+		}
+		CompletableFuture.allOf(placedOrders.toArray(CompletableFuture[]::new)).get(60, TimeUnit.SECONDS);
+		double asyncRate = orders * 1e9 / (System.nanoTime() - start);
+
+		int gatewayThreads = this.outboxGatewayExecutor.getPoolSize();
+		LOGGER.info(String.format("Placed %d orders: %.0f orders/sec blocking on 1 caller thread, "
+				+ "%.0f orders/sec async from 1 caller thread on %d gateway threads",
+				orders, blockingRate, asyncRate, gatewayThreads));
+
+		assertThat(gatewayThreads).isLessThanOrEqualTo(this.outboxGatewayExecutor.getMaxPoolSize());
+
+		for (int i = 0; i < orders * 2; i++) {
+			assertThat(this.consumedOrders.poll(30, TimeUnit.SECONDS)).isNotNull();
+		}
+		assertThat(this.jdbcTemplate.update("DELETE FROM ORDERS WHERE NAME LIKE '% load order'")).isEqualTo(orders * 2);
+	}
+
+	@Test
+	void gatewayRejectsOrdersAboveHighWaterMark() throws InterruptedException {
+		double published = this.meterRegistry.get("outbox.published").counter().count();
+		this.orderGateway.placeOrder(order("published order"));
+		assertThat(this.consumedOrders.poll(10, TimeUnit.SECONDS))
+				.extracting(ShoppingOrder::getName)
+				.isEqualTo("published order");
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (this.meterRegistry.get("outbox.published").counter().count() == published
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(100);
+		}
+		assertThat(this.meterRegistry.get("outbox.published").counter().count()).isGreaterThan(published);
+
+		// The relay cannot drain the outbox while its partition is claimed by this test thread
+		Lock outboxLock = this.outboxLockRegistry.obtain(UUIDConverter.getUUID("outbox").toString());
+		outboxLock.lock();
+		try {
+			this.jdbcChannelMessageStore.addMessageToGroup("outbox", outboxMessage("stuck", "stuck order"));
+			this.outboxMonitor.setHighWaterMark(1);
+			assertThat(this.outboxMonitor.depth(true)).isEqualTo(1);
+			assertThat(this.meterRegistry.get("outbox.depth").gauge().value()).isEqualTo(1);
+
+			assertThatException()
+					.isThrownBy(() -> this.orderGateway.placeOrder(order("rejected order")))
+					.withStackTraceContaining("high-water mark");
+			assertThat(this.jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ORDERS WHERE NAME = 'rejected order'",
+					Integer.class))
+					.isEqualTo(0);
+		}
+		finally {
+			this.outboxMonitor.setHighWaterMark(0);
+			this.jdbcChannelMessageStore.pollMessageFromGroup("outbox");
+			outboxLock.unlock();
+			this.jdbcTemplate.update("DELETE FROM ORDERS WHERE NAME = 'published order'");
+		}
+	}
+
+	@Test
+	void groupCommitRetriesFailedGroupIndividually() throws Exception {
+		DirectChannel ordersChannel = new DirectChannel();
+		ordersChannel.subscribe(this.ordersJpaHandler);
+		GroupCommitMessageHandler groupCommitHandler = new GroupCommitMessageHandler(this.transactionManager);
+		groupCommitHandler.setMaxBatchSize(3);
+		groupCommitHandler.setWindow(Duration.ofSeconds(1));
+		groupCommitHandler.setRetryMessageFunction(OutboxApplication::withFreshOrder);
+		groupCommitHandler.setOutputChannel(ordersChannel);
+		groupCommitHandler.setBeanFactory(this.applicationContext);
+		groupCommitHandler.afterPropertiesSet();
+		groupCommitHandler.start();
+		try {
+			CompletableFuture<Void> firstOrder =
+					CompletableFuture.runAsync(() ->
+							groupCommitHandler.handleMessage(new GenericMessage<>(order("first group order"))));
+			CompletableFuture<Void> invalidOrder =
+					CompletableFuture.runAsync(() -> groupCommitHandler.handleMessage(new GenericMessage<>(order(null))));
+			CompletableFuture<Void> secondOrder =
+					CompletableFuture.runAsync(() ->
+							groupCommitHandler.handleMessage(new GenericMessage<>(order("second group order"))));
+
+			// The group is rolled back because of the invalid order, the valid ones are committed on retry
+			assertThat(invalidOrder).failsWithin(Duration.ofSeconds(10));
+			firstOrder.get(10, TimeUnit.SECONDS);
+			secondOrder.get(10, TimeUnit.SECONDS);
+			assertThat(this.jdbcTemplate.queryForList("SELECT NAME FROM ORDERS WHERE NAME LIKE '% group order'",
+					String.class))
+					.containsExactlyInAnyOrder("first group order", "second group order");
+		}
+		finally {
+			groupCommitHandler.stop();
+			ordersChannel.unsubscribe(this.ordersJpaHandler);
+			this.jdbcTemplate.update("DELETE FROM ORDERS WHERE NAME LIKE '% group order'");
+		}
+
+		assertThat(groupCommitHandler.isRunning()).isFalse();
+		assertThatException()
+				.isThrownBy(() -> groupCommitHandler.handleMessage(new GenericMessage<>(order("stopped order"))));
+	}
+
+	@Test
+	void groupCommitSkipsTimedOutMessages() throws Exception {
+		DirectChannel ordersChannel = new DirectChannel();
+		ordersChannel.subscribe(this.ordersJpaHandler);
+		GroupCommitMessageHandler groupCommitHandler = new GroupCommitMessageHandler(this.transactionManager);
+		// The committer waits for more messages longer than the caller waits for the commit
+		groupCommitHandler.setWindow(Duration.ofSeconds(2));
+		groupCommitHandler.setCommitTimeout(Duration.ofMillis(200));
+		groupCommitHandler.setOutputChannel(ordersChannel);
+		groupCommitHandler.setBeanFactory(this.applicationContext);
+		groupCommitHandler.afterPropertiesSet();
+		groupCommitHandler.start();
+		try {
+			assertThatException()
+					.isThrownBy(() -> groupCommitHandler.handleMessage(new GenericMessage<>(order("timed out order"))))
+					.withMessageContaining("not started in time");
+
+			groupCommitHandler.setCommitTimeout(Duration.ofSeconds(10));
+			groupCommitHandler.handleMessage(new GenericMessage<>(order("committed order")));
+
+			// The group of the timed out order is done by now: the caller has been told the truth
+			assertThat(this.jdbcTemplate.queryForList("SELECT NAME FROM ORDERS WHERE NAME IN "
+					+ "('timed out order', 'committed order')", String.class))
+					.containsExactly("committed order");
+		}
+		finally {
+			groupCommitHandler.stop();
+			ordersChannel.unsubscribe(this.ordersJpaHandler);
+			this.jdbcTemplate.update("DELETE FROM ORDERS WHERE NAME IN ('timed out order', 'committed order')");
+		}
+	}
+
+	@Test
+	void outboxMessageCodecRoundTrip() throws IOException {
+		OutboxMessageCodec outboxMessageCodec = new OutboxMessageCodec(getClass().getClassLoader());
+
+		ShoppingOrder order = order("codec order");
+		order.setId(42);
+		Map<String, Object> headers = new HashMap<>();
+		headers.put(KafkaHeaders.KEY, "42");
+		headers.put("nullValue", null);
+		headers.put("uuidValue", UUID.randomUUID());
+		headers.put("longValue", 123L);
+		headers.put("integerValue", 7);
+		headers.put("stringValue", "value");
+		headers.put("serializableValue", Duration.ofSeconds(5));
+		Message<ShoppingOrder> message = new GenericMessage<>(order, headers);
+
+		Message<?> decoded = decode(outboxMessageCodec, encode(outboxMessageCodec, message));
+		assertThat(decoded.getPayload()).isEqualTo(order);
+		assertThat(decoded.getHeaders()).isEqualTo(message.getHeaders()).containsEntry("nullValue", null);
+
+		outboxMessageCodec.setCompressionThreshold(1);
+		byte[] compressed = encode(outboxMessageCodec, message);
+		assertThat(compressed[1]).isEqualTo((byte) 1);
+		assertThat(decode(outboxMessageCodec, compressed).getHeaders()).isEqualTo(message.getHeaders());
+		outboxMessageCodec.setCompressionThreshold(0);
+
+		// Rows stored before the codec are read via the allow-listed Java deserialization
+		SerializingConverter javaSerializer = new SerializingConverter();
+		Message<ShoppingOrder> legacyMessage = MessageBuilder.withPayload(order).setHeader(KafkaHeaders.KEY, "42").build();
+		byte[] javaSerialized = javaSerializer.convert(legacyMessage);
+		assertThat(decode(outboxMessageCodec, javaSerialized)).isEqualTo(legacyMessage);
+
+		byte[] compact = encode(outboxMessageCodec, legacyMessage);
+		assertThat(compact.length).isLessThan(javaSerialized.length);
+
+		int iterations = 10_000;
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			decode(outboxMessageCodec, encode(outboxMessageCodec, legacyMessage));
+		}
+		long codecNanos = (System.nanoTime() - start) / iterations;
+		start = System.nanoTime();
+		for (int i = 0; i < iterations; i++) {
+			decode(outboxMessageCodec, javaSerializer.convert(legacyMessage));
+		}
+		long javaNanos = (System.nanoTime() - start) / iterations;
+		LOGGER.info(String.format("Outbox row: %d bytes and %d ns/round trip with the codec, "
+						+ "%d bytes and %d ns/round trip with Java serialization",
+				compact.length, codecNanos, javaSerialized.length, javaNanos));
+	}
+
+	@Test
+	void outboxMessageCodecRejectsNotAllowedClasses() throws IOException {
+		OutboxMessageCodec outboxMessageCodec = new OutboxMessageCodec(getClass().getClassLoader());
+		Message<ShoppingOrder> message =
+				MessageBuilder.withPayload(order("codec order"))
+						.setHeader("file", new File("outbox"))
+						.build();
+
+		byte[] encoded = encode(outboxMessageCodec, message);
+		assertThatIOException().isThrownBy(() -> decode(outboxMessageCodec, encoded));
+
+		byte[] javaSerialized = new SerializingConverter().convert(message);
+		assertThatIOException().isThrownBy(() -> decode(outboxMessageCodec, javaSerialized));
+
+		outboxMessageCodec.addAllowedPatterns("java.io.File");
+		assertThat(decode(outboxMessageCodec, encoded).getHeaders()).containsEntry("file", new File("outbox"));
+	}
+
+	private static byte[] encode(OutboxMessageCodec outboxMessageCodec, Message<?> message) throws IOException {
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		outboxMessageCodec.serialize(message, encoded);
+		return encoded.toByteArray();
+	}
+
+	private static Message<?> decode(OutboxMessageCodec outboxMessageCodec, byte[] encoded) throws IOException {
+		return outboxMessageCodec.deserialize(new ByteArrayInputStream(encoded));
+	}
+
+	private static ShoppingOrder order(String name) {
+		ShoppingOrder order = new ShoppingOrder();
+		order.setName(name);
+		order.setAmount(BigDecimal.ONE);
+		return order;
+	}
+
+	private static Message<ShoppingOrder> outboxMessage(String key, String name) {
+		ShoppingOrder order = new ShoppingOrder();
+		order.setName(name);
+		order.setAmount(BigDecimal.TEN);
+		return MessageBuilder.withPayload(order)
+				.setHeader(KafkaHeaders.KEY, key)
+				.build();
+	}
+
 	@TestConfiguration
 	public static class KafkaListenerConfiguration {
 
 		private final BlockingQueue<ShoppingOrder> consumedOrders = new LinkedBlockingQueue<>();
 
+		private final BlockingQueue<ShoppingOrder> relayedOrders = new LinkedBlockingQueue<>();
+
 		@Bean
 		BlockingQueue<ShoppingOrder> consumedOrders() {
 			return this.consumedOrders;
 		}
 
+		@Bean
+		BlockingQueue<ShoppingOrder> relayedOrders() {
+			return this.relayedOrders;
+		}
+
 
 		@KafkaListener(topics = "orders", groupId = "ordersGroup")
 		void consumeOrder(ShoppingOrder order) {
 			this.consumedOrders.offer(order);
 		}
 
+		@KafkaListener(topics = "relayedOrders", groupId = "relayedOrdersGroup")
+		void relayOrder(ShoppingOrder order) {
+			this.relayedOrders.offer(order);
+		}
+
 	}
 
 }